@@ -8,9 +8,9 @@ import android.view.View;
  */
 public class AlphaPaintGlider extends Glider {
 	/**
-	 * The paint whose alpha is changed.
+	 * The paint whose alpha is changed. Changes only if the glider is rebound.
 	 */
-	protected final Paint target;
+	protected Paint target;
 	public AlphaPaintGlider(Paint target, View invalidatee) {
 		super(invalidatee, target.getAlpha());
 		this.target = target;
@@ -38,4 +38,19 @@ public class AlphaPaintGlider extends Glider {
 		target.setAlpha((int) Math.round(engine.getValue()));
 		return target;
 	}
+	/**
+	 * Binds this glider to the passed paint and view, as if it had been constructed with them. Any glide is cancelled, and the
+	 * view the glider was bound to before is no longer invalidated. Must be called from the UI thread.
+	 */
+	public final void rebind(Paint target, View invalidatee) {
+		// Validate both arguments before changing anything, so a failed rebind leaves this glider as it was.
+		if (null == target) {
+			throw new IllegalArgumentException("The target must be non-null");
+		}
+		if (null == invalidatee) {
+			throw new IllegalArgumentException("The invalidatee must be non-null");
+		}
+		rebind(invalidatee, target.getAlpha());
+		this.target = target;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package org.ilumbo.hakama;
+
+/**
+ * A clock which a group of engines can share, to pause, resume, slow down or speed up all of their glides at once. Engines
+ * join a clock through {@link GliderEngine#setClock(GlideClock)}.
+ *
+ * The time of the clock (the group time) is derived from the real time in a single place: {@link #toGroupTime(long)}.
+ * Pausing freezes the group time, which takes constant time regardless of the number of engines. Engines stop requesting
+ * frames while their clock is paused. Resuming continues the group time from where it was frozen, so the glides continue
+ * from where they were paused without creating new value determiners. Resuming notifies every engine, so they request
+ * frames again.
+ *
+ * Pause, resume and change the time scale from the UI thread.
+ */
+public final class GlideClock {
+	/**
+	 * The state of a clock, from which the group time is derived. Immutable, so it can be read without locking.
+	 */
+	private static final class State {
+		/**
+		 * The group time at the real base time.
+		 */
+		public final long groupBaseTime;
+		/**
+		 * Whether the group time is frozen.
+		 */
+		public final boolean paused;
+		/**
+		 * The real time at which the group time was the group base time, in the {@link System#nanoTime()} time base.
+		 */
+		public final long realBaseTime;
+		/**
+		 * The number of nanoseconds the group time advances for every nanosecond of real time.
+		 */
+		public final double timeScale;
+		public State(long groupBaseTime, long realBaseTime, double timeScale, boolean paused) {
+			this.groupBaseTime = groupBaseTime;
+			this.realBaseTime = realBaseTime;
+			this.timeScale = timeScale;
+			this.paused = paused;
+		}
+		/**
+		 * Returns the group time that corresponds to the passed real time.
+		 */
+		public final long toGroupTime(long realTime) {
+			if (paused) {
+				return groupBaseTime;
+			}
+			if (1 == timeScale) {
+				return groupBaseTime + (realTime - realBaseTime);
+			}
+			return groupBaseTime + Math.round((realTime - realBaseTime) * timeScale);
+		}
+	}
+	/**
+	 * The engines that use this clock, from index 0 up to (excluding) the member count. Hold the monitor to access.
+	 */
+	private GliderEngine[] members;
+	/**
+	 * The number of engines that use this clock. Hold the monitor to access.
+	 */
+	private int memberCount;
+	/**
+	 * The current state. Read without locking, as engines convert times for every frame. Replaced (rather than modified)
+	 * while the monitor is held, so changes to the state do not interfere with one another.
+	 */
+	private volatile State state;
+	public GlideClock() {
+		final long realTime = System.nanoTime();
+		state = new State(realTime, realTime, 1, false);
+		members = new GliderEngine[4];
+	}
+	/**
+	 * Returns the current group time.
+	 */
+	public final long getTime() {
+		return state.toGroupTime(System.nanoTime());
+	}
+	/**
+	 * Returns the number of nanoseconds the group time advances for every nanosecond of real time.
+	 */
+	public final double getTimeScale() {
+		return state.timeScale;
+	}
+	/**
+	 * Returns whether the group time is frozen.
+	 */
+	public final boolean isPaused() {
+		return state.paused;
+	}
+	/**
+	 * Adds the passed engine to the members.
+	 */
+	/* package */ final synchronized void join(GliderEngine engine) {
+		if (members.length == memberCount) {
+			final GliderEngine[] newMembers = new GliderEngine[memberCount << 1];
+			System.arraycopy(members, 0, newMembers, 0, memberCount);
+			members = newMembers;
+		}
+		members[memberCount++] = engine;
+	}
+	/**
+	 * Removes the passed engine from the members.
+	 */
+	/* package */ final synchronized void leave(GliderEngine engine) {
+		for (int index = 0; memberCount != index; index++) {
+			if (engine == members[index]) {
+				members[index] = members[--memberCount];
+				members[memberCount] = null;
+				return;
+			}
+		}
+	}
+	/**
+	 * Freezes the group time. Does nothing if the clock is paused already.
+	 */
+	public final synchronized void pause() {
+		final State state = this.state;
+		if (false == state.paused) {
+			this.state = new State(state.toGroupTime(System.nanoTime()), 0, state.timeScale, true);
+		}
+	}
+	/**
+	 * Continues the group time from where it was frozen, and notifies the engines that use this clock. Does nothing if the
+	 * clock is not paused.
+	 */
+	public final void resume() {
+		final GliderEngine[] members;
+		final int memberCount;
+		synchronized (this) {
+			final State state = this.state;
+			if (false == state.paused) {
+				return;
+			}
+			this.state = new State(state.groupBaseTime, System.nanoTime(), state.timeScale, false);
+			// Copy the members, so they can be notified outside of the synchronized block.
+			memberCount = this.memberCount;
+			members = new GliderEngine[memberCount];
+			System.arraycopy(this.members, 0, members, 0, memberCount);
+		}
+		for (final GliderEngine member : members) {
+			member.onClockResumed();
+		}
+	}
+	/**
+	 * Returns the passed velocity, which is per second of group time, as a velocity per second of real time.
+	 */
+	public final double scaleVelocity(double velocity) {
+		final State state = this.state;
+		if (state.paused) {
+			return 0;
+		}
+		return velocity * state.timeScale;
+	}
+	/**
+	 * Sets the number of nanoseconds the group time advances for every nanosecond of real time. Pass .5 for half speed, 2 for
+	 * double speed. The group time is continuous: changing the time scale does not make glides jump.
+	 */
+	public final synchronized void setTimeScale(double timeScale) {
+		if (timeScale <= 0) {
+			throw new IllegalArgumentException("The time scale must be positive");
+		}
+		final State state = this.state;
+		final long realTime = System.nanoTime();
+		this.state = new State(state.toGroupTime(realTime), realTime, timeScale, state.paused);
+	}
+	/**
+	 * Returns the group time that corresponds to the passed real time, which is in the {@link System#nanoTime()} time base.
+	 * This is where pausing and the time scale are applied. Does not lock.
+	 */
+	public final long toGroupTime(long realTime) {
+		return state.toGroupTime(realTime);
+	}
+}
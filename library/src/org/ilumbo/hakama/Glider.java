@@ -15,6 +15,16 @@ import android.view.View;
  * 2) The onDraw implementation of the view interacts with the glider, and draws the current state of the glide.
  * 3) During the interaction from step 2, the glider checks whether the glide is completed. If not, it invalidates the view
  *    that presents the glide. Because said view is invalidated, step 2 will happen once again.
+ *
+ * Gliders are designed to be created in large numbers, for instance one for every row of a list. On Android runtimes
+ * (8-byte object headers, 4-byte references, objects aligned to 8 bytes) a glider occupies 16 bytes, and a choreographed
+ * or freestyle engine 32 bytes. An alpha paint glider also occupies 16 bytes, as its reference to the paint fits in the
+ * padding. Whilst gliding, the value determiner adds another 56 bytes for a linear glide, or 64 bytes for an interpolated
+ * one. The engines lock on themselves rather than on a separate lock object, and idle engines hold no value determiner.
+ * Optional features (a clock, predicted presentation timing, the velocity and glides started from other threads) need 32
+ * bytes of extras, which an engine allocates the first time one of them is used. Predicted presentation timing adds another
+ * 40 bytes, and glides started from other threads a 64-byte command slot. A glide clock is shared by a group of engines,
+ * which only hold a reference to it. The HeapSizeCheck tool verifies these figures against the fields of the classes.
  */
 public abstract class Glider {
 	/**
@@ -27,14 +37,41 @@ public abstract class Glider {
 	 * is available that works neatly with the Android framework, snap.
 	 */
 	protected static final boolean LEGACY_BEHAVIOR_SNAP = false;
+	/**
+	 * Determine values for the time at which a frame is drawn. This behaviour is the default.
+	 */
+	protected static final boolean PRESENTATION_TIMING_DRAW = false;
+	/**
+	 * Start glides at the first frame after they were started, and determine values for the predicted time at which a frame
+	 * is presented on the display. This reduces the perceived latency between input and motion by about a frame.
+	 */
+	protected static final boolean PRESENTATION_TIMING_PREDICTED = true;
+	/**
+	 * Whether the Android version of the device is 16 (jelly bean) or higher, which means the choreographed engine is
+	 * available. Resolved once, rather than every time a glider is constructed.
+	 */
+	private static final boolean CHOREOGRAPHER_AVAILABLE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
 	/**
 	 * The engine this glider uses, which does all of the hard work.
 	 */
 	protected final GliderEngine engine;
+	/**
+	 * Uses the passed engine, rather than constructing one. This allows derivative classes to use engines which are not
+	 * selected automatically, such as pipelined ones.
+	 */
+	protected Glider(GliderEngine engine) {
+		if (null == engine) {
+			throw new IllegalArgumentException("The engine must be non-null");
+		}
+		this.engine = engine;
+	}
 	protected Glider(View invalidatee, double initialValue) {
 		this(invalidatee, initialValue, LEGACY_BEHAVIOR_FREESTYLE);
 	}
 	protected Glider(View invalidatee, double initialValue, boolean legacyBehavior) {
+		this(invalidatee, initialValue, legacyBehavior, PRESENTATION_TIMING_DRAW);
+	}
+	protected Glider(View invalidatee, double initialValue, boolean legacyBehavior, boolean presentationTiming) {
 		// Check whether the invalidatee is null right now, because if it actually is null a NullPointerException will not be
 		// thrown until the engine tries to invalidate. That might be somewhere completely different from where the glider was
 		// constructed. If so, it is not obvious that passing the null to the constructor was the cause.
@@ -43,13 +80,24 @@ public abstract class Glider {
 		}
 		// Construct an engine. Use the choreographed one if the Android version of the device is 16 (jelly bean) or higher, as
 		// that engine has neat integration with the Android framework.
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-			engine = new ChoreographedGliderEngine(invalidatee, initialValue);
+		if (CHOREOGRAPHER_AVAILABLE) {
+			engine = new ChoreographedGliderEngine(invalidatee, initialValue, presentationTiming);
 		// If the choreographed engine is not available, use an engine based on the passed legacy behaviour.
 		} else if (LEGACY_BEHAVIOR_FREESTYLE == legacyBehavior) {
-			engine = new FreestyleGliderEngine(invalidatee, initialValue);
+			engine = new FreestyleGliderEngine(invalidatee, initialValue, presentationTiming);
 		} else /* if (LEGACY_BEHAVIOR_SNAP == legacyBehavior) */ {
 			engine = new SnapGliderEngine(initialValue);
 		}
 	}
+	/**
+	 * Binds this glider to the passed view and value, as if it had been constructed with them. Any glide is cancelled, and
+	 * the view the glider was bound to before is no longer invalidated. This allows gliders to be recycled, for instance when
+	 * the rows of a list are rebound. Must be called from the UI thread.
+	 */
+	protected void rebind(View invalidatee, double initialValue) {
+		if (null == invalidatee) {
+			throw new IllegalArgumentException("The invalidatee must be non-null");
+		}
+		engine.rebind(invalidatee, initialValue);
+	}
 }
\ No newline at end of file
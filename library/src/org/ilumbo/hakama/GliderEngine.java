@@ -1,6 +1,13 @@
 package org.ilumbo.hakama;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.ilumbo.hakama.interpolation.AccelerateDecelerateInterpolator;
+import org.ilumbo.hakama.interpolation.AccelerateInterpolator;
+import org.ilumbo.hakama.interpolation.DecelerateInterpolator;
 import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
+import org.ilumbo.hakama.interpolation.OvershootInterpolator;
 
 import android.os.SystemClock;
 import android.view.View;
@@ -9,6 +16,203 @@ import android.view.View;
  * The engine used by gliders to do all of the timing work and invalidations.
  */
 public abstract class GliderEngine {
+	/**
+	 * The state an engine only needs for optional features: a clock, predicted presentation timing, the velocity and glides
+	 * or stops requested from other threads. Allocated the first time one of those features is used, so an engine that uses
+	 * none of them costs a single reference. See {@link GliderEngine#obtainExtras()}.
+	 */
+	protected static final class Extras {
+		/**
+		 * Atomically allocates {@link #commandSlot}.
+		 */
+		private static final AtomicReferenceFieldUpdater<Extras, CommandSlot> COMMAND_SLOT_UPDATER =
+				AtomicReferenceFieldUpdater.newUpdater(Extras.class, CommandSlot.class, "commandSlot");
+		/**
+		 * The clock the engine uses, or null if it uses the real time.
+		 */
+		public GlideClock clock;
+		/**
+		 * Holds the glides and stops requested from threads other than the UI thread. null if there have been none. Once
+		 * allocated, never replaced.
+		 */
+		public volatile CommandSlot commandSlot;
+		/**
+		 * Predicts the time at which frames are presented. {@code null} if values are determined for the time at which frames
+		 * are drawn.
+		 */
+		public PresentationTimePredictor presentationTimePredictor;
+		/**
+		 * The time for which the value was most recently determined, in the time base of the engine. Used to determine the
+		 * velocity. {@link Long#MIN_VALUE} if the engine has not recorded that time since these extras were allocated.
+		 */
+		public long valueTime = Long.MIN_VALUE;
+	}
+	/**
+	 * Holds the most recent glide or stop requested from a thread other than the UI thread, until the UI thread takes it.
+	 * Commands replace one another, so only the most recent one is applied.
+	 *
+	 * The command is stored in primitive fields rather than in a value determiner, so a command that is replaced before it is
+	 * taken allocates nothing. Only the command that is taken allocates its value determiner (a {@link ConstantValueDeterminer}
+	 * for a stop). The fields are published through a sequence number, which is odd while a command is being written. The
+	 * threads that queue commands wait for one another, which takes a few stores at most. The UI thread never waits: if it
+	 * finds a command being written, it leaves that command to the notification of the thread that writes it.
+	 */
+	protected static final class CommandSlot {
+		/**
+		 * Atomically sets and clears {@link #notified}.
+		 */
+		private static final AtomicIntegerFieldUpdater<CommandSlot> NOTIFIED_UPDATER =
+				AtomicIntegerFieldUpdater.newUpdater(CommandSlot.class, "notified");
+		/**
+		 * Atomically increments {@link #sequence} to start writing a command.
+		 */
+		private static final AtomicIntegerFieldUpdater<CommandSlot> SEQUENCE_UPDATER =
+				AtomicIntegerFieldUpdater.newUpdater(CommandSlot.class, "sequence");
+		/**
+		 * The duration of the glide, in nanoseconds.
+		 */
+		private volatile long duration;
+		/**
+		 * The end value of the glide, or the value of the stop.
+		 */
+		private volatile double endValue;
+		/**
+		 * The interpolator of the glide, or null for a linear glide or a stop.
+		 */
+		private volatile ElapsedFactorInterpolator interpolator;
+		/**
+		 * 1 if the UI thread has been notified of a command it has not taken yet, 0 otherwise. The thread that sets this flag
+		 * notifies the UI thread, so concurrent commands cause a single notification.
+		 */
+		private volatile int notified;
+		/**
+		 * Incremented before and after a command is written, so it is odd while a command is being written.
+		 */
+		private volatile int sequence;
+		/**
+		 * The start time of the glide, in the time base of the engine.
+		 */
+		private volatile long startTime;
+		/**
+		 * The start value of the glide.
+		 */
+		private volatile double startValue;
+		/**
+		 * Whether the command is a stop rather than a glide.
+		 */
+		private volatile boolean stop;
+		/**
+		 * The sequence of the command that was most recently taken or discarded. Only accessed by the UI thread.
+		 */
+		private int takenSequence;
+		/**
+		 * Waits for any other thread that is writing a command, then starts writing. Returns the (odd) sequence.
+		 */
+		private final int beginWrite() {
+			while (true) {
+				final int sequence = this.sequence;
+				if (0 == (sequence & 1) && SEQUENCE_UPDATER.compareAndSet(this, sequence, sequence + 1)) {
+					return sequence + 1;
+				}
+				Thread.yield();
+			}
+		}
+		/**
+		 * Discards the command that has not been taken yet, if any. Call from the UI thread when it glides or stops itself, as
+		 * that glide or stop is more recent.
+		 */
+		public final void discard() {
+			if (0 == notified) {
+				return;
+			}
+			notified = 0;
+			// If a command is being written, that one is not discarded: the thread that writes it notifies the UI thread again.
+			takenSequence = sequence & ~1;
+		}
+		/**
+		 * Publishes the command written since the passed sequence was returned by beginWrite. Returns whether the caller must
+		 * notify the UI thread, which is the case unless a notification is pending already.
+		 */
+		private final boolean endWrite(int sequence) {
+			this.sequence = sequence + 1;
+			return 0 == NOTIFIED_UPDATER.getAndSet(this, 1);
+		}
+		/**
+		 * Returns the end value of the command that has not been taken yet. Returns NaN if there is none.
+		 */
+		public final double getPendingEndValue() {
+			return 0 == notified ? Double.NaN : endValue;
+		}
+		/**
+		 * Queues a glide, replacing any command that has not been taken yet. Returns whether the caller must notify the UI
+		 * thread. Allocates nothing.
+		 */
+		public final boolean queueGlide(double startValue, double endValue, long startTime, long duration,
+				ElapsedFactorInterpolator interpolator) {
+			final int sequence = beginWrite();
+			stop = false;
+			this.startValue = startValue;
+			this.endValue = endValue;
+			this.startTime = startTime;
+			this.duration = duration;
+			this.interpolator = interpolator;
+			return endWrite(sequence);
+		}
+		/**
+		 * Queues a stop, replacing any command that has not been taken yet. Returns whether the caller must notify the UI
+		 * thread. Allocates nothing.
+		 */
+		public final boolean queueStop(double value) {
+			final int sequence = beginWrite();
+			stop = true;
+			endValue = value;
+			interpolator = null;
+			return endWrite(sequence);
+		}
+		/**
+		 * Called by the UI thread when it cancelled the notification (by removing the callback it posted). Returns whether
+		 * a command has not been taken yet, in which case the caller must notify the UI thread again. Otherwise, the next
+		 * command would not notify, as a notification would still seem pending.
+		 */
+		public final boolean renotify() {
+			if (0 == NOTIFIED_UPDATER.getAndSet(this, 0)) {
+				return false;
+			}
+			// If this fails, another thread queued a command in the meantime, and notified the UI thread itself.
+			return NOTIFIED_UPDATER.compareAndSet(this, 0, 1);
+		}
+		/**
+		 * Takes the command that has not been taken yet, and returns its value determiner (a {@link ConstantValueDeterminer}
+		 * for a stop). Returns null if there is none, or if the command is still being written. Call from the UI thread when
+		 * it is notified.
+		 */
+		public final ValueDeterminer take() {
+			if (0 == notified) {
+				return null;
+			}
+			// Clear the flag before reading the command. A thread that queues a command from now on notifies again.
+			notified = 0;
+			final int sequence = this.sequence;
+			if (0 != (sequence & 1) || sequence == takenSequence) {
+				return null;
+			}
+			final boolean stop = this.stop;
+			final double startValue = this.startValue;
+			final double endValue = this.endValue;
+			final long startTime = this.startTime;
+			final long duration = this.duration;
+			final ElapsedFactorInterpolator interpolator = this.interpolator;
+			// If another command was written while reading, leave it: the thread that wrote it notifies again.
+			if (sequence != this.sequence) {
+				return null;
+			}
+			takenSequence = sequence;
+			if (stop) {
+				return new ConstantValueDeterminer(endValue);
+			}
+			return createValueDeterminer(startValue, endValue, startTime, duration, interpolator);
+		}
+	}
 	/**
 	 * Determines the value at a certain point in time during a glide.
 	 */
@@ -22,8 +226,8 @@ public abstract class GliderEngine {
 		 */
 		protected final double duration;
 		/**
-		 * The time at which the glide is completed, and at which the value equals the start value plus the delta, in the
-		 * {@link System#nanoTime()} time base.
+		 * The time at which the glide is completed, and at which the value equals the start value plus the delta, in the time
+		 * base of the engine (see {@link GliderEngine#getTime()}).
 		 */
 		public final long endTime;
 		/**
@@ -33,10 +237,10 @@ public abstract class GliderEngine {
 		 */
 		public final double endValue;
 		/**
-		 * The time at which the glide starts, and at which the value equals the start value, in the {@link System#nanoTime()}
-		 * time base.
+		 * The time at which the glide starts, and at which the value equals the start value, in the time base of the engine
+		 * (see {@link GliderEngine#getTime()}).
 		 */
-		protected final long startTime;
+		public final long startTime;
 		/**
 		 * The value at the start time.
 		 */
@@ -51,6 +255,27 @@ public abstract class GliderEngine {
 		 * Returns the value for the passed time.
 		 */
 		public abstract double determineValue(long time);
+		/**
+		 * Returns the velocity for the passed time, which is the amount the value changes per second at that time. Outside of
+		 * the glide (before the start time or after the end time) the velocity is 0.
+		 */
+		public abstract double determineVelocity(long time);
+	}
+	/**
+	 * Returns a constant value. Used to represent a stop as a value determiner, so glides and stops can be taken alike.
+	 */
+	protected static final class ConstantValueDeterminer extends ValueDeterminer {
+		public ConstantValueDeterminer(double value) {
+			super(value, value, 0, 0);
+		}
+		@Override
+		public final double determineValue(long time) {
+			return endValue;
+		}
+		@Override
+		public final double determineVelocity(long time) {
+			return 0;
+		}
 	}
 	/**
 	 * Determines the value at a certain point in time during a non-linear glide.
@@ -70,10 +295,23 @@ public abstract class GliderEngine {
 			}
 			return startValue + delta * elapsedFactor;
 		}
+		@Override
+		public final double determineVelocity(long time) {
+			if (time < startTime || time > endTime) {
+				return 0;
+			}
+			return (delta * 1e9) / duration;
+		}
 	}
 	/**
 	 * Determines the value at a certain point in time during an interpolated glide. The glide could be, and probably is,
 	 * non-linear.
+	 *
+	 * If the interpolator is one of the built-in ones, its curve is called through its Static class, selected by type checks
+	 * on the interpolator. Only custom interpolators are called through the {@link ElapsedFactorInterpolator} interface. As
+	 * every interpolated glide uses this one class, the call to the value determiner in the engines is not made megamorphic by
+	 * an app that mixes interpolators, and neither is the call to the curve. The type checks need no fields, so this value
+	 * determiner is no larger than one that only calls through the interface.
 	 */
 	protected static final class InterpolatedValueDeterminer extends ValueDeterminer {
 		/**
@@ -84,6 +322,43 @@ public abstract class GliderEngine {
 			super(startValue, endValue, startTime, duration);
 			this.interpolator = interpolator;
 		}
+		/**
+		 * Returns the interpolated elapsed factor.
+		 */
+		private final double interpolate(double elapsedFactor) {
+			// The accelerate, decelerate and accelerate-decelerate interpolators are final, so an instanceof check is exact and
+			// costs a single comparison. The overshoot interpolator is not final, but its interpolate method is.
+			final ElapsedFactorInterpolator interpolator = this.interpolator;
+			if (interpolator instanceof DecelerateInterpolator) {
+				return DecelerateInterpolator.Static.interpolate(elapsedFactor);
+			} else if (interpolator instanceof AccelerateDecelerateInterpolator) {
+				return AccelerateDecelerateInterpolator.Static.interpolate(elapsedFactor);
+			} else if (interpolator instanceof AccelerateInterpolator) {
+				return AccelerateInterpolator.Static.interpolate(elapsedFactor);
+			} else if (interpolator instanceof OvershootInterpolator) {
+				return OvershootInterpolator.Static.interpolate(elapsedFactor,
+						((OvershootInterpolator) interpolator).getTension());
+			} else /* if (the interpolator is a custom one) */ {
+				return interpolator.interpolate(elapsedFactor);
+			}
+		}
+		/**
+		 * Returns the velocity of the interpolated elapsed factor.
+		 */
+		private final double velocity(double elapsedFactor) {
+			final ElapsedFactorInterpolator interpolator = this.interpolator;
+			if (interpolator instanceof DecelerateInterpolator) {
+				return DecelerateInterpolator.Static.velocity(elapsedFactor);
+			} else if (interpolator instanceof AccelerateDecelerateInterpolator) {
+				return AccelerateDecelerateInterpolator.Static.velocity(elapsedFactor);
+			} else if (interpolator instanceof AccelerateInterpolator) {
+				return AccelerateInterpolator.Static.velocity(elapsedFactor);
+			} else if (interpolator instanceof OvershootInterpolator) {
+				return OvershootInterpolator.Static.velocity(elapsedFactor, ((OvershootInterpolator) interpolator).getTension());
+			} else /* if (the interpolator is a custom one) */ {
+				return interpolator.velocity(elapsedFactor);
+			}
+		}
 		@Override
 		public final double determineValue(long time) {
 			if (time <= startTime) {
@@ -93,20 +368,88 @@ public abstract class GliderEngine {
 			if (elapsedFactor >= 1) {
 				return startValue + delta;
 			}
-			return startValue + delta * interpolator.interpolate(elapsedFactor);
+			return startValue + delta * interpolate(elapsedFactor);
+		}
+		@Override
+		public final double determineVelocity(long time) {
+			if (time < startTime) {
+				return 0;
+			}
+			final double elapsedFactor = (time - startTime) / duration;
+			if (elapsedFactor > 1) {
+				return 0;
+			}
+			return ((delta * 1e9) / duration) * velocity(elapsedFactor);
 		}
 	}
 	/**
-	 * The view that is invalidated while gliding and potentially while stopping.
+	 * Atomically allocates {@link #extras}.
+	 */
+	private static final AtomicReferenceFieldUpdater<GliderEngine, Extras> EXTRAS_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(GliderEngine.class, Extras.class, "extras");
+	/**
+	 * The state for optional features, or null if none of them have been used. Once allocated, never replaced.
+	 */
+	protected volatile Extras extras;
+	/**
+	 * The view that is invalidated while gliding and potentially while stopping. Changes only if the engine is rebound.
 	 */
-	protected final View invalidatee;
+	protected View invalidatee;
 	protected GliderEngine(View invalidatee) {
 		this.invalidatee = invalidatee;
 	}
+	/**
+	 * Ends any previously started glide and sets the value to the passed value, like {@link #stop(double)} does. Additionally,
+	 * ensures this engine no longer invalidates the view it is bound to, by cancelling any pending frame callbacks. Must be
+	 * called from the UI thread.
+	 */
+	public void cancel(double value) {
+		stop(value);
+	}
+	/**
+	 * Returns the time that corresponds to the passed real time, which is in the {@link System#nanoTime()} time base, in the
+	 * time base of this engine. If this engine uses a clock, that is the group time of the clock.
+	 */
+	protected final long convertTime(long realTime) {
+		final Extras extras = this.extras;
+		if (null == extras || null == extras.clock) {
+			return realTime;
+		}
+		return extras.clock.toGroupTime(realTime);
+	}
+	/**
+	 * Returns the passed velocity, which is per second in the time base of this engine, as a velocity per second of real
+	 * time. If this engine uses a clock, this applies the time scale of that clock.
+	 */
+	protected final double convertVelocity(double velocity) {
+		final Extras extras = this.extras;
+		if (null == extras || null == extras.clock) {
+			return velocity;
+		}
+		return extras.clock.scaleVelocity(velocity);
+	}
+	/**
+	 * Creates a value determiner for an interpolated glide. If the passed interpolator is one of the built-in ones, its curve
+	 * is called through its Static class rather than through the {@link ElapsedFactorInterpolator} interface.
+	 */
+	protected static final ValueDeterminer createInterpolatedValueDeterminer(double startValue, double endValue,
+			long startTime, long duration, ElapsedFactorInterpolator interpolator) {
+		return new InterpolatedValueDeterminer(startValue, endValue, startTime, duration, interpolator);
+	}
+	/**
+	 * Creates a value determiner for a glide, which is linear if null is passed as the interpolator.
+	 */
+	protected static final ValueDeterminer createValueDeterminer(double startValue, double endValue, long startTime,
+			long duration, ElapsedFactorInterpolator interpolator) {
+		if (null == interpolator) {
+			return new LinearValueDeterminer(startValue, endValue, startTime, duration);
+		}
+		return new InterpolatedValueDeterminer(startValue, endValue, startTime, duration, interpolator);
+	}
 	/**
 	 * Determines the duration of a glide in nanoseconds, based on the start and end values, and the average speed.
 	 */
-	protected final long determineDuration(double startValue, double endValue, double averageSpeed) {
+	protected static final long determineDuration(double startValue, double endValue, double averageSpeed) {
 		// Determine the distance first, which is an absolute (non-negative) number.
 		double distance = startValue - endValue;
 		if (distance < 0) {
@@ -120,6 +463,26 @@ public abstract class GliderEngine {
 	 * amount of time would pass.
 	 */
 	public abstract double getEndValue();
+	/**
+	 * Returns the current velocity, which is the amount the value changes per second. The velocity is determined for the same
+	 * time as the value most recently returned by {@link GliderEngine#getValue()}, so the two match. If no glide is happening,
+	 * the velocity is 0.
+	 *
+	 * Engines only record the time of the value once they have extras. If the velocity is requested before that, it is
+	 * determined for the current time instead, and the two match from then on.
+	 */
+	public abstract double getVelocity();
+	/**
+	 * Returns the current time in the time base of this engine, in nanoseconds. If this engine uses a clock, this is the
+	 * group time of the clock. Otherwise, this is the {@link System#nanoTime()} time base.
+	 */
+	protected final long getTime() {
+		final Extras extras = this.extras;
+		if (null == extras || null == extras.clock) {
+			return System.nanoTime();
+		}
+		return extras.clock.getTime();
+	}
 	/**
 	 * Returns the current value. The view passed to the constructor of the glider must use this method to obtain the current
 	 * value in its onDraw implementation. This method should not be called from anywhere else, especially not from another
@@ -143,11 +506,12 @@ public abstract class GliderEngine {
 			stop(endValue);
 			return;
 		}
-		glide(new LinearValueDeterminer(
+		startGlide(
 				startValue, endValue,
-				System.nanoTime(),
-				determineDuration(startValue, endValue, speed)
-		));
+				getTime(),
+				determineDuration(startValue, endValue, speed),
+				null
+		);
 	}
 	/**
 	 * Glides the value from the passed start value to the passed end value, and does so in an interpolated fashion using the
@@ -168,12 +532,12 @@ public abstract class GliderEngine {
 			stop(endValue);
 			return;
 		}
-		glide(new InterpolatedValueDeterminer(
+		startGlide(
 				startValue, endValue,
-				System.nanoTime(),
+				getTime(),
 				determineDuration(startValue, endValue, averageSpeed),
 				interpolator
-		));
+		);
 	}
 	/**
 	 * Glides the value from the passed start value to the passed end value. The passed speed is the amount that is added to
@@ -192,11 +556,12 @@ public abstract class GliderEngine {
 			stop(endValue);
 			return;
 		}
-		glide(new LinearValueDeterminer(
+		startGlide(
 				startValue, endValue,
-				System.nanoTime() + (startTime - SystemClock.uptimeMillis()) * 1000000,
-				determineDuration(startValue, endValue, speed)
-		));
+				convertTime(System.nanoTime() + (startTime - SystemClock.uptimeMillis()) * 1000000),
+				determineDuration(startValue, endValue, speed),
+				null
+		);
 	}
 	/**
 	 * Glides the value from the passed start value to the passed end value, and does so in an interpolated fashion using the
@@ -219,17 +584,97 @@ public abstract class GliderEngine {
 			stop(endValue);
 			return;
 		}
-		glide(new InterpolatedValueDeterminer(
+		startGlide(
 				startValue, endValue,
-				System.nanoTime() + (startTime - SystemClock.uptimeMillis()) * 1000000,
+				convertTime(System.nanoTime() + (startTime - SystemClock.uptimeMillis()) * 1000000),
 				determineDuration(startValue, endValue, averageSpeed),
 				interpolator
-		));
+		);
 	}
 	/**
 	 * Derivative classes should either implement this method, or leave this one blank implement the four public glide methods.
 	 */
 	protected abstract void glide(ValueDeterminer newValueDeterminer);
+	/**
+	 * Returns whether this engine uses a clock which is paused. Engines must not request frames nor invalidate while this is
+	 * the case.
+	 */
+	protected final boolean isClockPaused() {
+		final Extras extras = this.extras;
+		return null != extras && null != extras.clock && extras.clock.isPaused();
+	}
+	/**
+	 * Returns the command slot of this engine, allocating it (and the extras) if this has not happened yet. Can be called
+	 * from any thread.
+	 */
+	protected final CommandSlot obtainCommandSlot() {
+		final Extras extras = obtainExtras();
+		final CommandSlot commandSlot = extras.commandSlot;
+		if (null != commandSlot) {
+			return commandSlot;
+		}
+		Extras.COMMAND_SLOT_UPDATER.compareAndSet(extras, null, new CommandSlot());
+		return extras.commandSlot;
+	}
+	/**
+	 * Returns the extras of this engine, allocating them if this has not happened yet. Can be called from any thread.
+	 */
+	protected final Extras obtainExtras() {
+		final Extras extras = this.extras;
+		if (null != extras) {
+			return extras;
+		}
+		// If another thread allocates the extras at the same time, one of the two allocations wins and both threads use it.
+		EXTRAS_UPDATER.compareAndSet(this, null, new Extras());
+		return this.extras;
+	}
+	/**
+	 * Called by the clock this engine uses when it is resumed, from the thread that resumed it. Engines that stopped
+	 * requesting frames while the clock was paused must request them again.
+	 */
+	protected void onClockResumed() {
+	}
+	/**
+	 * Binds this engine to the passed view and value, as if it had been constructed with them. Any glide is cancelled (see
+	 * {@link #cancel(double)}), so the view the engine was bound to before is no longer invalidated. Must be called from the UI
+	 * thread, and not while glides are being started from other threads.
+	 */
+	public void rebind(View invalidatee, double value) {
+		cancel(value);
+		this.invalidatee = invalidatee;
+	}
+	/**
+	 * Makes this engine use the passed clock, or the real time if null is passed. The glides of all engines that use the same
+	 * clock are paused, resumed and scaled together. The clock keeps a reference to this engine, so set the clock to null
+	 * once this engine is no longer used.
+	 *
+	 * Set the clock only while the value is not being glided. A glide that is happening while the clock is set jumps, because
+	 * its start time is in the old time base.
+	 */
+	public void setClock(GlideClock clock) {
+		// Only allocate the extras if a clock is set, not if it is removed.
+		final Extras extras = null == clock ? this.extras : obtainExtras();
+		if (null == extras) {
+			return;
+		}
+		if (null != extras.clock) {
+			extras.clock.leave(this);
+		}
+		if (null != (extras.clock = clock)) {
+			clock.join(this);
+		}
+	}
+	/**
+	 * Starts a glide from the passed start value to the passed end value. The passed start time is in the time base of this
+	 * engine, and the passed duration is in nanoseconds. Pass null as the interpolator for a linear glide. Called by the four
+	 * public glide methods. Creates a value determiner and passes it to {@link #glide(ValueDeterminer)}. Engines that queue
+	 * glides requested from other threads override this method to queue the glide in a {@link CommandSlot} instead, so a
+	 * glide that is replaced before it is applied allocates nothing.
+	 */
+	protected void startGlide(double startValue, double endValue, long startTime, long duration,
+			ElapsedFactorInterpolator interpolator) {
+		glide(createValueDeterminer(startValue, endValue, startTime, duration, interpolator));
+	}
 	/**
 	 * Sets the value to the passed value, ending any previously started glides.
 	 *
@@ -0,0 +1,59 @@
+package org.ilumbo.hakama;
+
+/**
+ * A bounded pool of gliders, which allows gliders to be recycled rather than garbage collected. Useful when views are
+ * recycled, such as the rows of a list.
+ *
+ * Acquire a glider from the pool when a view is bound. If a glider is returned, rebind it to the view. If null is returned,
+ * construct a new glider. Release the glider back into the pool when the view is recycled. As long as the pool is large
+ * enough to hold the gliders of all recycled views, binding views produces no garbage.
+ *
+ * Pools are not thread-safe, and should be used from the UI thread only.
+ */
+public final class GliderPool<G extends Glider> {
+	/**
+	 * The gliders in the pool, from index 0 up to (excluding) the size.
+	 */
+	private final Object[] gliders;
+	/**
+	 * The number of gliders in the pool.
+	 */
+	private int size;
+	public GliderPool(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		gliders = new Object[capacity];
+	}
+	/**
+	 * Removes a glider from the pool and returns it, or returns null if the pool is empty. The returned glider must be rebound
+	 * before it is used.
+	 */
+	@SuppressWarnings("unchecked")
+	public final G acquire() {
+		if (0 == size) {
+			return null;
+		}
+		final G result = (G) gliders[--size];
+		gliders[size] = null;
+		return result;
+	}
+	/**
+	 * Cancels any glide of the passed glider, so it no longer invalidates the view it is bound to, and adds it to the pool.
+	 * Returns true if the glider was added, or false if the pool is full. In the latter case, the glider is cancelled but not
+	 * retained.
+	 */
+	public final boolean release(G glider) {
+		for (int index = 0; size != index; index++) {
+			if (gliders[index] == glider) {
+				throw new IllegalStateException("The glider is already in the pool");
+			}
+		}
+		glider.engine.cancel(glider.engine.getEndValue());
+		if (gliders.length == size) {
+			return false;
+		}
+		gliders[size++] = glider;
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package org.ilumbo.hakama;
+
+/**
+ * Used by engines to evaluate glides for the time at which a frame is presented, rather than the time at which it is drawn.
+ *
+ * A frame that is drawn now is presented on the display roughly one frame interval later. This predictor observes the
+ * interval between consecutive frames, and adds it to the time the frame is drawn. Additionally, it snaps the start of a
+ * glide to the first frame that is drawn after the glide was started. Without that snap, the first frame would show a jump
+ * (as some time passed between the start of the glide and the frame) or, when compensated by starting later, would be wasted
+ * showing the start value.
+ *
+ * An instance belongs to one engine, and is accessed only while the monitor of that engine is held.
+ */
+public final class PresentationTimePredictor {
+	/**
+	 * The frame interval that is assumed until an interval has been observed, in nanoseconds. This corresponds to 60 frames
+	 * per second.
+	 */
+	public static final long DEFAULT_FRAME_INTERVAL = 16666667;
+	/**
+	 * Times closer than this to the time of the previous frame are considered to belong to that same frame, in nanoseconds.
+	 * Engines without a notion of frames predict for every read of the value, and a view might read the value more than once
+	 * while it is drawn. Those reads must neither produce different values nor be observed as (very short) frame intervals.
+	 * No display refreshes more often than every 2 milliseconds.
+	 */
+	/* package */ static final long SAME_FRAME_THRESHOLD = 2000000;
+	/**
+	 * Whether the next frame is the first frame of a glide.
+	 */
+	private boolean alignOnFrame;
+	/**
+	 * The estimated interval between two consecutive frames, in nanoseconds.
+	 */
+	private long frameInterval;
+	/**
+	 * The time at which the previous frame was drawn, or 0 if the previous frame was not part of the same glide (or series
+	 * of glides).
+	 */
+	private long previousFrameTime;
+	/**
+	 * The amount of time that is substracted from the frame times, so the glide effectively starts at the first frame.
+	 */
+	private long timeShift;
+	public PresentationTimePredictor() {
+		frameInterval = DEFAULT_FRAME_INTERVAL;
+	}
+	/**
+	 * Returns a new estimate of the frame interval, based on the passed previous estimate and the passed observed interval
+	 * between two consecutive frames (both in nanoseconds). Intervals that are absurdly long (the app was paused, the view was
+	 * off-screen) are ignored. An interval of about two or three times the estimate means one or two frames were dropped, so
+	 * it is counted as that many intervals of its share. The estimate then moves a quarter of the way to the observation.
+	 * This keeps the estimate stable when frames are dropped, while it still adapts to displays with other refresh rates. A
+	 * display that refreshes at exactly half the rate of the estimate cannot be told apart from one that drops every other
+	 * frame, so the estimate does not follow such a change.
+	 */
+	public static final long estimateFrameInterval(long estimate, long observedInterval) {
+		if (observedInterval <= 0 || observedInterval >= estimate << 2) {
+			return estimate;
+		}
+		// Determine the number of intervals the observation spans, counting from 1.75 times the estimate as 2.
+		final long intervalCount = (observedInterval + (estimate >> 2)) / estimate;
+		if (intervalCount > 1) {
+			observedInterval /= intervalCount;
+		}
+		return estimate + ((observedInterval - estimate) >> 2);
+	}
+	/**
+	 * Returns the estimated interval between two consecutive frames, in nanoseconds.
+	 */
+	public final long getFrameInterval() {
+		return frameInterval;
+	}
+	/**
+	 * Must be called by the engine when a glide is completed or stopped. The interval between the last frame of this glide and
+	 * the first frame of the next one is not a frame interval.
+	 */
+	public final void onGlideEnded() {
+		previousFrameTime = 0;
+	}
+	/**
+	 * Must be called by the engine when a glide is started.
+	 */
+	public final void onGlideStarted() {
+		alignOnFrame = true;
+		timeShift = 0;
+	}
+	/**
+	 * Returns the time for which the value should be determined, for a frame drawn at the passed time during a glide which
+	 * started at the passed start time. Both times are in the time base of the engine. If the passed frame time is very close
+	 * to that of the previous call, both calls are considered to be for the same frame, and return the same time.
+	 */
+	public final long predict(long frameTime, long startTime) {
+		// Observe the interval between this frame and the previous one. If the interval is too short to be a frame interval,
+		// this call is for the same frame as the previous one: use the time of that frame instead.
+		if (0 != previousFrameTime) {
+			final long observedInterval = frameTime - previousFrameTime;
+			if (observedInterval >= 0 && observedInterval < SAME_FRAME_THRESHOLD) {
+				frameTime = previousFrameTime;
+			} else /* if (this call is for a new frame) */ {
+				frameInterval = estimateFrameInterval(frameInterval, observedInterval);
+			}
+		}
+		previousFrameTime = frameTime;
+		// If this is the first frame of the glide, snap the start of the glide to this frame. Only do this if the glide
+		// started less than a frame ago. If it started longer ago, it was most likely started at a specific time in the past
+		// on purpose.
+		if (alignOnFrame) {
+			alignOnFrame = false;
+			final long lateness = frameTime - startTime;
+			if (lateness > 0 && lateness <= frameInterval) {
+				timeShift = lateness;
+			}
+		}
+		return frameTime - timeShift + frameInterval;
+	}
+}
\ No newline at end of file
@@ -2,6 +2,8 @@ package org.ilumbo.hakama;
 
 import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
 
+import android.view.View;
+
 /**
  * A glider engine that snaps instead of glides. Sort of a null object implementation, if you will. It ignores the speeds
  * passed to the glide methods, so one could argue that the implementation is incorrect
@@ -25,6 +27,10 @@ public final class SnapGliderEngine extends GliderEngine {
 		return value;
 	}
 	@Override
+	public final double getVelocity() {
+		return 0;
+	}
+	@Override
 	public final void glide(double startValue, double endValue, double speed) {
 		value = endValue;
 	}
@@ -45,6 +51,11 @@ public final class SnapGliderEngine extends GliderEngine {
 		throw new UnsupportedOperationException();
 	}
 	@Override
+	public final void rebind(View invalidatee, double value) {
+		// Again, there is no need to store the view.
+		this.value = value;
+	}
+	@Override
 	public final void stop(double value) {
 		this.value = value;
 	}
@@ -0,0 +1,241 @@
+package org.ilumbo.hakama;
+
+import java.util.Arrays;
+
+import org.ilumbo.hakama.GliderEngine.ValueDeterminer;
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.Choreographer.FrameCallback;
+import android.view.View;
+
+/**
+ * Glides a group of items along the same curve, each item starting a fixed offset after the start of the group. Useful for
+ * entrance animations of lists, in which every row glides the same way with a small delay between consecutive rows.
+ *
+ * Rather than a glider (with an engine and a value determiner) for every item, the group shares a single value determiner,
+ * which starts at time 0. When a new frame starts, the values of all items are determined in one pass by evaluating that
+ * value determiner at the time elapsed since the start of every item, and stored. The views then obtain the value of their
+ * item through {@link #getValue(int)} in their onDraw implementation. A single frame callback is kept alive for the whole
+ * group, until the last item has completed its glide.
+ *
+ * On Android versions without a choreographer, the values are determined when the views are drawn instead, like the
+ * freestyle engine does. The first call to {@link #getValue(int)} of a frame determines the values of all items, and
+ * invalidates the views of the items that have not completed their glides, so they are drawn again. On those versions,
+ * an item without a view does not drive the staggered glide.
+ *
+ * Staggered glides are not thread-safe, and should be used from the UI thread only.
+ */
+public final class StaggeredGlide {
+	/**
+	 * Notifies the staggered glide when a new frame starts. Only used on Android versions with a choreographer, so this is
+	 * the only class that refers to it.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private final class ChoreographedDriver implements FrameCallback {
+		/**
+		 * @hide
+		 */
+		@Override
+		public final void doFrame(long frameTime) {
+			if (running && determineValues(frameTime, false)) {
+				Choreographer.getInstance().postFrameCallback(this);
+			}
+		}
+		public final void post() {
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+		public final void remove() {
+			Choreographer.getInstance().removeFrameCallback(this);
+		}
+	}
+	private static final boolean CHOREOGRAPHER_AVAILABLE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+	/**
+	 * Notifies this staggered glide when a new frame starts. null on Android versions without a choreographer.
+	 */
+	private final ChoreographedDriver driver;
+	/**
+	 * The time at which the glide of the last item is completed, in the {@link System#nanoTime()} time base. Only meaningful
+	 * while running.
+	 */
+	private long endTime;
+	/**
+	 * The views that are invalidated when the value of the corresponding item changes. Elements can be null.
+	 */
+	private final View[] invalidatees;
+	/**
+	 * The largest of the offsets, in nanoseconds.
+	 */
+	private final long maximumOffset;
+	/**
+	 * The time between the start of the group and the start of the glide of every item, in nanoseconds.
+	 */
+	private final long[] offsets;
+	/**
+	 * Whether the staggered glide is running. On Android versions with a choreographer, a frame callback is pending while
+	 * this is the case.
+	 */
+	private boolean running;
+	/**
+	 * The time at which the group starts, in the {@link System#nanoTime()} time base. Only meaningful while running.
+	 */
+	private long startTime;
+	/**
+	 * Determines the value of every item, from the time elapsed since the start of that item. Starts at time 0.
+	 */
+	private final ValueDeterminer valueDeterminer;
+	/**
+	 * The values of the items, as determined for the most recent frame.
+	 */
+	private final double[] values;
+	/**
+	 * The time for which the values were most recently determined, in the {@link System#nanoTime()} time base. Only used on
+	 * Android versions without a choreographer, to determine the values once per frame.
+	 */
+	private long valuesTime;
+	/**
+	 * Creates a staggered glide for the passed number of items, in which every item starts the passed delay (in milliseconds)
+	 * after the previous one. The passed invalidatees correspond to the items, and must either have a length equal to the
+	 * item count or be null. See {@link #StaggeredGlide(double, double, double, ElapsedFactorInterpolator, long[], View[])}.
+	 */
+	public StaggeredGlide(double startValue, double endValue, double averageSpeed, ElapsedFactorInterpolator interpolator,
+			int itemCount, long delay, View[] invalidatees) {
+		this(startValue, endValue, averageSpeed, interpolator, createOffsets(itemCount, delay), invalidatees);
+	}
+	/**
+	 * Creates a staggered glide from the passed start value to the passed end value. The passed speed is the amount that
+	 * would be added to the start value or substracted from it every second to reach the end value, if the glide were linear.
+	 * The passed interpolator is applied to the glide of every item, or null can be passed for linear glides. The passed
+	 * offsets are the times between the start of the group and the start of the glide of every item, in milliseconds. The
+	 * passed invalidatees correspond to the items, and must either have the same length as the offsets or be null. Elements
+	 * can be null as well, or refer to the same view.
+	 *
+	 * The values of all items are set to the start value, until the staggered glide is started.
+	 */
+	public StaggeredGlide(double startValue, double endValue, double averageSpeed, ElapsedFactorInterpolator interpolator,
+			long[] offsets, View[] invalidatees) {
+		if (null != invalidatees && invalidatees.length != offsets.length) {
+			throw new IllegalArgumentException("The number of invalidatees must equal the number of offsets");
+		}
+		final long duration = GliderEngine.determineDuration(startValue, endValue, averageSpeed);
+		if (null == interpolator) {
+			valueDeterminer = new GliderEngine.LinearValueDeterminer(startValue, endValue, 0, duration);
+		} else /* if (null != interpolator) */ {
+			valueDeterminer = GliderEngine.createInterpolatedValueDeterminer(startValue, endValue, 0, duration, interpolator);
+		}
+		this.invalidatees = null == invalidatees ? new View[offsets.length] : invalidatees.clone();
+		// Convert the offsets to nanoseconds, and find the largest one.
+		this.offsets = new long[offsets.length];
+		long maximumOffset = 0;
+		for (int index = 0; offsets.length != index; index++) {
+			if (offsets[index] < 0) {
+				throw new IllegalArgumentException("The offsets must not be negative");
+			}
+			maximumOffset = Math.max(maximumOffset, this.offsets[index] = offsets[index] * 1000000);
+		}
+		this.maximumOffset = maximumOffset;
+		values = new double[offsets.length];
+		Arrays.fill(values, valueDeterminer.startValue);
+		driver = CHOREOGRAPHER_AVAILABLE ? new ChoreographedDriver() : null;
+	}
+	/**
+	 * Stops the staggered glide, leaving the values of the items as they were at the most recent frame.
+	 */
+	public final void cancel() {
+		if (running) {
+			running = false;
+			if (null != driver) {
+				driver.remove();
+			}
+		}
+	}
+	/**
+	 * Returns offsets for the passed number of items, in which every item starts the passed delay after the previous one.
+	 */
+	private static final long[] createOffsets(int itemCount, long delay) {
+		final long[] result = new long[itemCount];
+		for (int index = 1; itemCount > index; index++) {
+			result[index] = result[index - 1] + delay;
+		}
+		return result;
+	}
+	/**
+	 * Determines the values of all items for the passed time, and invalidates the views of the items whose values changed.
+	 * If true is passed, additionally invalidates the views of the items that have not completed their glides, even if their
+	 * values did not change. Returns whether the staggered glide is still running, and updates the running flag.
+	 */
+	private final boolean determineValues(long time, boolean invalidateUncompleted) {
+		final long elapsedTime = time - startTime;
+		View previousInvalidatee = null;
+		for (int index = 0; values.length != index; index++) {
+			// Determine the value of this item, from the time that elapsed since its own start.
+			final long itemTime = elapsedTime - offsets[index];
+			final double value = valueDeterminer.determineValue(itemTime);
+			// Invalidate the view of this item only if the value changed. Items that have not started yet or have already
+			// completed their glides cost no invalidations. Consecutive items often share a view (the list itself), which is
+			// then invalidated once.
+			if (value != values[index] || (invalidateUncompleted && itemTime <= valueDeterminer.endTime)) {
+				values[index] = value;
+				final View invalidatee = invalidatees[index];
+				if (null != invalidatee && previousInvalidatee != invalidatee) {
+					(previousInvalidatee = invalidatee).invalidate();
+				}
+			}
+		}
+		// Keep running until the glide of the last item is completed.
+		return running = time < endTime;
+	}
+	/**
+	 * Returns the number of items.
+	 */
+	public final int getItemCount() {
+		return values.length;
+	}
+	/**
+	 * Returns the value of the item at the passed index, as determined for the most recent frame. The view of that item must
+	 * use this method to obtain the value in its onDraw implementation.
+	 */
+	public final double getValue(int index) {
+		// Without a choreographer, determine the values here, once per frame. Calls less than a frame apart are considered to
+		// belong to the same frame.
+		if (running && null == driver) {
+			final long time = System.nanoTime();
+			if (time - valuesTime >= PresentationTimePredictor.SAME_FRAME_THRESHOLD) {
+				determineValues(valuesTime = time, true);
+			}
+		}
+		return values[index];
+	}
+	/**
+	 * Returns whether the staggered glide is running, which is the case from the moment it is started until the glide of the
+	 * last item is completed.
+	 */
+	public final boolean isRunning() {
+		return running;
+	}
+	/**
+	 * Sets the view that is invalidated when the value of the item at the passed index changes. Useful when views are
+	 * recycled. Pass null if the item has no view.
+	 */
+	public final void setInvalidatee(int index, View invalidatee) {
+		invalidatees[index] = invalidatee;
+	}
+	/**
+	 * Starts the staggered glide now, resetting the values of all items to the start value. Restarts it if it is running.
+	 *
+	 * You should invalidate the views of the items after starting the staggered glide.
+	 */
+	public final void start() {
+		Arrays.fill(values, valueDeterminer.startValue);
+		endTime = (startTime = System.nanoTime()) + maximumOffset + valueDeterminer.endTime;
+		valuesTime = 0;
+		if (false == running) {
+			running = true;
+			if (null != driver) {
+				driver.post();
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -1,15 +1,25 @@
 package org.ilumbo.hakama.choreographed;
 
 import org.ilumbo.hakama.GliderEngine;
+import org.ilumbo.hakama.PresentationTimePredictor;
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
 
 import android.annotation.TargetApi;
 import android.os.Build;
+import android.os.Looper;
 import android.view.Choreographer;
 import android.view.Choreographer.FrameCallback;
 import android.view.View;
 
 /**
  * The default engine for Android versions with a choreographer.
+ *
+ * Hold the monitor of the engine itself to access {@link #valueDeterminer}, {@link #value}, {@link #invalidateOnFrame} or
+ * the extras (other than the pending command). A separate lock object would cost every engine another object. The state for
+ * optional features lives in the extras, so an engine that uses none of them occupies 32 bytes.
+ *
+ * Glides and stops requested from other threads do not take the monitor, and replace one another in a
+ * {@link CommandSlot}. Requests that are replaced before they are applied allocate nothing.
  */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 public final class ChoreographedGliderEngine extends GliderEngine implements FrameCallback, Runnable {
@@ -26,28 +36,79 @@ public final class ChoreographedGliderEngine extends GliderEngine implements Fra
 	 * The value determiner that is used to return the value whilst gliding.
 	 */
 	private ValueDeterminer valueDeterminer;
+	public ChoreographedGliderEngine(View invalidatee, double initialValue) {
+		this(invalidatee, initialValue, false);
+	}
 	/**
-	 * Hold this lock to access {@link #valueDeterminer}, {@link #value} or {@link #invalidateOnFrame}.
+	 * If true is passed as predict presentation time, glides start at the first frame after they were started, and values
+	 * are determined for the predicted time at which a frame is presented. See {@link PresentationTimePredictor}.
 	 */
-	private final Object stateLock;
-	public ChoreographedGliderEngine(View invalidatee, double initialValue) {
+	public ChoreographedGliderEngine(View invalidatee, double initialValue, boolean predictPresentationTime) {
 		super(invalidatee);
 		value = initialValue;
-		stateLock = new Object();
+		if (predictPresentationTime) {
+			obtainExtras().presentationTimePredictor = new PresentationTimePredictor();
+		}
+	}
+	@Override
+	public final void cancel(double value) {
+		synchronized (this) {
+			stop(value);
+			invalidateOnFrame = false;
+		}
+		// Remove the frame callback, as well as the runnable that posts it (in case a glide was started from another thread).
+		Choreographer.getInstance().removeFrameCallback(this);
+		invalidatee.removeCallbacks(this);
+		// Another thread might have queued a command after the stop above, and posted the runnable that was just removed.
+		// That command would never be applied, and as its notification seems pending, later commands would not post the
+		// runnable either. Post it again if that is the case.
+		final Extras extras = this.extras;
+		if (null != extras && null != extras.commandSlot && extras.commandSlot.renotify()) {
+			invalidatee.post(this);
+		}
 	}
 	/**
 	 * @hide
 	 */
 	@Override
 	public final void doFrame(long frameTime) {
-		synchronized (stateLock) {
+		// Take the command queued by another thread, if any. This is where the value determiner of that command is created.
+		final Extras extras = this.extras;
+		final ValueDeterminer command = null == extras || null == extras.commandSlot ? null : extras.commandSlot.take();
+		synchronized (this) {
+			// Apply that command. The thread that queued it could not invalidate, so invalidate now.
+			if (null != command) {
+				if (command instanceof ConstantValueDeterminer) {
+					applyStop(command.endValue);
+					invalidatee.invalidate();
+				} else /* if (the command is a glide) */ {
+					applyGlide(command);
+					invalidateOnFrame = true;
+				}
+			}
 			// If a glide is happening (which is most likely is, otherwise this method would probably not be called), determine
 			// the value at the frame time using the value determiner.
 			if (null != valueDeterminer) {
-				value = valueDeterminer.determineValue(frameTime);
+				// Determine the time for which the value is determined. This is either the frame time itself, or the predicted
+				// time at which the frame will be presented. The frame time is converted to the time base of this engine first,
+				// so the clock (if any) applies to the prediction as well. An engine without extras has no clock and no
+				// predictor, and does not record the time. That is the common case, so it is kept short.
+				final long time;
+				if (null == extras) {
+					time = frameTime;
+				} else if (null == extras.presentationTimePredictor) {
+					extras.valueTime = time = convertTime(frameTime);
+				} else /* if (null != extras.presentationTimePredictor) */ {
+					extras.valueTime = time =
+							extras.presentationTimePredictor.predict(convertTime(frameTime), valueDeterminer.startTime);
+				}
+				value = valueDeterminer.determineValue(time);
 				// Check whether the glide is now completed. null out the value determiner if so.
-				if (frameTime > valueDeterminer.endTime) {
+				if (time > valueDeterminer.endTime) {
 					valueDeterminer = null;
+					if (null != extras && null != extras.presentationTimePredictor) {
+						extras.presentationTimePredictor.onGlideEnded();
+					}
 				}
 				// Invalidate, if the flag is set.
 				if (invalidateOnFrame) {
@@ -59,7 +120,14 @@ public final class ChoreographedGliderEngine extends GliderEngine implements Fra
 	}
 	@Override
 	public final double getEndValue() {
-		synchronized (stateLock) {
+		final Extras extras = this.extras;
+		if (null != extras && null != extras.commandSlot) {
+			final double pendingEndValue = extras.commandSlot.getPendingEndValue();
+			if (false == Double.isNaN(pendingEndValue)) {
+				return pendingEndValue;
+			}
+		}
+		synchronized (this) {
 			if (null != valueDeterminer) {
 				return valueDeterminer.endValue;
 			} else /* if (null == valueDeterminer) */ {
@@ -71,11 +139,12 @@ public final class ChoreographedGliderEngine extends GliderEngine implements Fra
 	public final double getValue() {
 		final double result;
 		final boolean postFrameCallback;
-		synchronized (stateLock) {
+		synchronized (this) {
 			result = value;
 			// If a glide is happening, ensure this engine is notified when the next frame starts and invalidate the view
-			// during that notification.
-			if (postFrameCallback = (null != valueDeterminer)) {
+			// during that notification. Do not while the clock is paused: the value would not change. The clock notifies this
+			// engine when it is resumed.
+			if (postFrameCallback = (null != valueDeterminer && false == isClockPaused())) {
 				invalidateOnFrame = true;
 			}
 		}
@@ -84,21 +153,83 @@ public final class ChoreographedGliderEngine extends GliderEngine implements Fra
 		}
 		return result;
 	}
-	protected final void glide(ValueDeterminer newValueDeterminer) {
-		synchronized (stateLock) {
-			// Set the value to the start value of the value determiner. The getValue method might me called before the doFrame
-			// method is called. Setting the value ensures the expected result is returned.
-			value = 
-			// Save the value determiner. This might overwrite an existing value determiner (of a less recently started glide).
-					(valueDeterminer = newValueDeterminer).startValue;
+	@Override
+	public final double getVelocity() {
+		synchronized (this) {
+			if (null == valueDeterminer) {
+				return 0;
+			}
+			// The time of the value is recorded once the extras exist. If it has not been recorded yet, use the current time
+			// this once, and record the time from now on.
+			final Extras extras = obtainExtras();
+			if (Long.MIN_VALUE == extras.valueTime) {
+				extras.valueTime = getTime();
+			}
+			return convertVelocity(valueDeterminer.determineVelocity(extras.valueTime));
 		}
-		// Ensure this engine is notified when the next frame starts. When this happens, the value will be determined.
-		if (null != android.os.Looper.myLooper()) {
-			Choreographer.getInstance().postFrameCallback(this);
-		} else /* if (null == android.os.Looper.myLooper()) */ {
+	}
+	@Override
+	protected final void onClockResumed() {
+		synchronized (this) {
+			if (null == valueDeterminer) {
+				return;
+			}
+			invalidateOnFrame = true;
+		}
+		// Request frames again, as getValue stopped doing so while the clock was paused.
+		if (Looper.getMainLooper() != Looper.myLooper()) {
 			invalidatee.post(this);
+		} else /* if (this method is called from the UI thread) */ {
+			Choreographer.getInstance().postFrameCallback(this);
 		}
 	}
+	/**
+	 * Starts the glide of the passed value determiner. Hold the monitor when calling this method.
+	 */
+	private final void applyGlide(ValueDeterminer newValueDeterminer) {
+		// Set the value to the start value of the value determiner. The getValue method might me called before the doFrame
+		// method is called. Setting the value ensures the expected result is returned.
+		value = 
+		// Save the value determiner. This might overwrite an existing value determiner (of a less recently started glide).
+				(valueDeterminer = newValueDeterminer).startValue;
+		final Extras extras = this.extras;
+		if (null != extras) {
+			extras.valueTime = newValueDeterminer.startTime;
+			if (null != extras.presentationTimePredictor) {
+				extras.presentationTimePredictor.onGlideStarted();
+			}
+		}
+	}
+	/**
+	 * Ends any glide and sets the passed value. Hold the monitor when calling this method.
+	 */
+	private final void applyStop(double value) {
+		// null out any value determiner that might exist. The doFrame method might still be called (once), but that method
+		// will soon enough find that the value determiner is gone.
+		valueDeterminer = null;
+		final Extras extras = this.extras;
+		if (null != extras && null != extras.presentationTimePredictor) {
+			extras.presentationTimePredictor.onGlideEnded();
+		}
+		// Save the passed value.
+		this.value = value;
+	}
+	/**
+	 * Starts the glide of the passed value determiner. Only called from the UI thread, as glides requested from other threads
+	 * are queued by the startGlide method.
+	 */
+	protected final void glide(ValueDeterminer newValueDeterminer) {
+		synchronized (this) {
+			// Discard any queued command, as this glide is more recent.
+			final Extras extras = this.extras;
+			if (null != extras && null != extras.commandSlot) {
+				extras.commandSlot.discard();
+			}
+			applyGlide(newValueDeterminer);
+		}
+		// Ensure this engine is notified when the next frame starts. When this happens, the value will be determined.
+		Choreographer.getInstance().postFrameCallback(this);
+	}
 	/**
 	 * @hide
 	 */
@@ -107,13 +238,35 @@ public final class ChoreographedGliderEngine extends GliderEngine implements Fra
 		Choreographer.getInstance().postFrameCallback(this);
 	}
 	@Override
+	protected final void startGlide(double startValue, double endValue, long startTime, long duration,
+			ElapsedFactorInterpolator interpolator) {
+		// If this method is called from another thread than the UI thread, queue the glide rather than applying it. Queued
+		// glides and stops replace one another, and only the most recent one is applied when the next frame starts. The
+		// runnable (which posts the frame callback) is posted only by the thread that found no notification pending.
+		if (Looper.getMainLooper() != Looper.myLooper()) {
+			if (obtainCommandSlot().queueGlide(startValue, endValue, startTime, duration, interpolator)) {
+				invalidatee.post(this);
+			}
+			return;
+		}
+		super.startGlide(startValue, endValue, startTime, duration, interpolator);
+	}
+	@Override
 	public final void stop(double value) {
-		synchronized (stateLock) {
-			// null out any value determiner that might exist. The doFrame method might still be called (once), but that method
-			// will soon enough find that the value determiner is gone.
-			valueDeterminer = null;
-			// Save the passed value.
-			this.value = value;
+		// If this method is called from another thread than the UI thread, queue the stop (see the startGlide method).
+		if (Looper.getMainLooper() != Looper.myLooper()) {
+			if (obtainCommandSlot().queueStop(value)) {
+				invalidatee.post(this);
+			}
+			return;
+		}
+		synchronized (this) {
+			// Discard any queued command, as this stop is more recent.
+			final Extras extras = this.extras;
+			if (null != extras && null != extras.commandSlot) {
+				extras.commandSlot.discard();
+			}
+			applyStop(value);
 		}
 	}
 }
\ No newline at end of file
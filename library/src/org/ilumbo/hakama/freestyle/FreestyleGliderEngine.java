@@ -1,11 +1,21 @@
 package org.ilumbo.hakama.freestyle;
 
 import org.ilumbo.hakama.GliderEngine;
+import org.ilumbo.hakama.PresentationTimePredictor;
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
 
+import android.os.Looper;
 import android.view.View;
 
 /**
  * The engine that can be used on Android versions which do not have a choreographer.
+ *
+ * Hold the monitor of the engine itself to access {@link #valueDeterminer}, {@link #fixedValue} or the extras (other than
+ * the pending command). A separate lock object would cost every engine another object. The state for optional features lives
+ * in the extras, so an engine that uses none of them occupies 32 bytes.
+ *
+ * Glides and stops requested from other threads do not take the monitor, and replace one another in a
+ * {@link CommandSlot}. Requests that are replaced before they are applied allocate nothing.
  */
 public final class FreestyleGliderEngine extends GliderEngine {
 	/**
@@ -16,18 +26,32 @@ public final class FreestyleGliderEngine extends GliderEngine {
 	 * The value determiner that is used to return the value whilst gliding. {@code null} otherwise.
 	 */
 	private ValueDeterminer valueDeterminer;
+	public FreestyleGliderEngine(View invalidatee, double initialValue) {
+		this(invalidatee, initialValue, false);
+	}
 	/**
-	 * Hold this lock to access {@link #valueDeterminer} or {@link #fixedValue}.
+	 * If true is passed as predict presentation time, glides start at the first draw after they were started, and values are
+	 * determined for the predicted time at which a frame is presented. As this engine has no notion of frames, the interval
+	 * between consecutive draws is used as the frame interval. Reads of the value within the same draw (less than 2
+	 * milliseconds apart) count as one. See {@link PresentationTimePredictor}.
 	 */
-	private final Object stateLock;
-	public FreestyleGliderEngine(View invalidatee, double initialValue) {
+	public FreestyleGliderEngine(View invalidatee, double initialValue, boolean predictPresentationTime) {
 		super(invalidatee);
 		fixedValue = initialValue;
-		stateLock = new Object();
+		if (predictPresentationTime) {
+			obtainExtras().presentationTimePredictor = new PresentationTimePredictor();
+		}
 	}
 	@Override
 	public final double getEndValue() {
-		synchronized (stateLock) {
+		final Extras extras = this.extras;
+		if (null != extras && null != extras.commandSlot) {
+			final double pendingEndValue = extras.commandSlot.getPendingEndValue();
+			if (false == Double.isNaN(pendingEndValue)) {
+				return pendingEndValue;
+			}
+		}
+		synchronized (this) {
 			if (null != valueDeterminer) {
 				return valueDeterminer.endValue;
 			} else /* if (null == valueDeterminer) */ {
@@ -37,14 +61,34 @@ public final class FreestyleGliderEngine extends GliderEngine {
 	}
 	@Override
 	public final double getValue() {
+		// Take the command queued by another thread, if any. This is where the value determiner of that command is created.
+		final Extras extras = this.extras;
+		final ValueDeterminer command = null == extras || null == extras.commandSlot ? null : extras.commandSlot.take();
 		final double result;
-		synchronized (stateLock) {
+		synchronized (this) {
+			// Apply that command.
+			if (null != command) {
+				if (command instanceof ConstantValueDeterminer) {
+					applyStop(command.endValue);
+				} else /* if (the command is a glide) */ {
+					applyGlide(command);
+				}
+			}
 			// If no glide is happening, use the fixed value.
 			if (null == valueDeterminer) {
 				return fixedValue;
 			// If a glide is happening, determine the value at this time using the value determiner.
 			} else /* if (null != valueDeterminer) */ {
-				final long time = System.nanoTime();
+				// An engine without extras has no clock and no predictor, and does not record the time. That is the common case,
+				// so it is kept short.
+				final long time;
+				if (null == extras) {
+					time = System.nanoTime();
+				} else if (null == extras.presentationTimePredictor) {
+					extras.valueTime = time = getTime();
+				} else /* if (null != extras.presentationTimePredictor) */ {
+					extras.valueTime = time = extras.presentationTimePredictor.predict(getTime(), valueDeterminer.startTime);
+				}
 				result = valueDeterminer.determineValue(time);
 				// Check whether the glide is now completed. Clear out the value determiner if so, while setting the end value as
 				// the fixed value. Note that this check only considers the time. The glide could be completed before the time
@@ -52,35 +96,124 @@ public final class FreestyleGliderEngine extends GliderEngine {
 				// does not optimise for such a situation.
 				if (time > valueDeterminer.endTime) {
 					valueDeterminer = null;
+					if (null != extras && null != extras.presentationTimePredictor) {
+						extras.presentationTimePredictor.onGlideEnded();
+					}
 					return fixedValue = result;
 				}
 			}
 		}
 		// If the glide is not completed yet, invalidate so the view is drawn again at some point in the future. (This
 		// commented if block should have been placed inside the synchronized block if it weren't commented out. It is nice
-		// to have the invalidate call outside of that block, though.)
+		// to have the invalidate call outside of that block, though.) Do not invalidate while the clock is paused, as the value
+		// would not change. The clock notifies this engine when it is resumed.
 		/* if (null != valueDeterminer) { */
+		if (false == isClockPaused()) {
 			invalidatee.invalidate();
+		}
 		/* } */
 		return result;
 	}
+	@Override
+	public final double getVelocity() {
+		synchronized (this) {
+			if (null == valueDeterminer) {
+				return 0;
+			}
+			// The time of the value is recorded once the extras exist. If it has not been recorded yet, use the current time
+			// this once, and record the time from now on.
+			final Extras extras = obtainExtras();
+			if (Long.MIN_VALUE == extras.valueTime) {
+				extras.valueTime = getTime();
+			}
+			return convertVelocity(valueDeterminer.determineVelocity(extras.valueTime));
+		}
+	}
+	@Override
+	protected final void onClockResumed() {
+		synchronized (this) {
+			if (null == valueDeterminer) {
+				return;
+			}
+		}
+		// Draw again, as getValue stopped invalidating while the clock was paused.
+		invalidatee.postInvalidate();
+	}
+	/**
+	 * Starts the glide of the passed value determiner. Hold the monitor when calling this method.
+	 */
+	private final void applyGlide(ValueDeterminer newValueDeterminer) {
+		// Save the value determiner. This line might overwrite an existing value determiner (of a less recently started
+		// glide).
+		valueDeterminer = newValueDeterminer;
+		final Extras extras = this.extras;
+		if (null != extras) {
+			extras.valueTime = newValueDeterminer.startTime;
+			if (null != extras.presentationTimePredictor) {
+				extras.presentationTimePredictor.onGlideStarted();
+			}
+		}
+		// The fixed value could be set to NaN. It will not be used as long as valueDeterminer is non-null.
+		/* fixedValue = Double.NaN; */
+	}
+	/**
+	 * Ends any glide and sets the passed value as the fixed value. Hold the monitor when calling this method.
+	 */
+	private final void applyStop(double value) {
+		// null out the value determiner. The view might still be drawn again (once) because of the now stopped glide,
+		// which is OK: the getValue method will simply return the fixed value set below.
+		valueDeterminer = null;
+		final Extras extras = this.extras;
+		if (null != extras && null != extras.presentationTimePredictor) {
+			extras.presentationTimePredictor.onGlideEnded();
+		}
+		// Save the passed value as the fixed value.
+		fixedValue = value;
+	}
+	/**
+	 * Starts the glide of the passed value determiner. Only called from the UI thread, as glides requested from other threads
+	 * are queued by the startGlide method.
+	 */
 	protected final void glide(ValueDeterminer newValueDeterminer) {
-		synchronized (stateLock) {
-			// Save the value determiner. This line might overwrite an existing value determiner (of a less recently started
-			// glide).
-			valueDeterminer = newValueDeterminer;
-			// The fixed value could be set to NaN. It will not be used as long as valueDeterminer is non-null.
-			/* fixedValue = Double.NaN; */
+		synchronized (this) {
+			// Discard any queued command, as this glide is more recent.
+			final Extras extras = this.extras;
+			if (null != extras && null != extras.commandSlot) {
+				extras.commandSlot.discard();
+			}
+			applyGlide(newValueDeterminer);
+		}
+	}
+	@Override
+	protected final void startGlide(double startValue, double endValue, long startTime, long duration,
+			ElapsedFactorInterpolator interpolator) {
+		// If this method is called from another thread than the UI thread, queue the glide rather than applying it. Queued
+		// glides and stops replace one another, and only the most recent one is applied when the invalidatee is drawn next.
+		// The invalidatee is invalidated only by the thread that found no notification pending.
+		if (Looper.getMainLooper() != Looper.myLooper()) {
+			if (obtainCommandSlot().queueGlide(startValue, endValue, startTime, duration, interpolator)) {
+				invalidatee.postInvalidate();
+			}
+			return;
 		}
+		super.startGlide(startValue, endValue, startTime, duration, interpolator);
 	}
 	@Override
 	public final void stop(double value) {
-		synchronized (stateLock) {
-			// null out the value determiner. The view might still be drawn again (once) because of the now stopped glide,
-			// which is OK: the getValue method will simply return the fixed value set below.
-			valueDeterminer = null;
-			// Save the passed value as the fixed value.
-			fixedValue = value;
+		// If this method is called from another thread than the UI thread, queue the stop (see the startGlide method).
+		if (Looper.getMainLooper() != Looper.myLooper()) {
+			if (obtainCommandSlot().queueStop(value)) {
+				invalidatee.postInvalidate();
+			}
+			return;
+		}
+		synchronized (this) {
+			// Discard any queued command, as this stop is more recent.
+			final Extras extras = this.extras;
+			if (null != extras && null != extras.commandSlot) {
+				extras.commandSlot.discard();
+			}
+			applyStop(value);
 		}
 	}
 }
\ No newline at end of file
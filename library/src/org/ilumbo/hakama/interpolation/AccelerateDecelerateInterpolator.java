@@ -26,7 +26,7 @@ package org.ilumbo.hakama.interpolation;
  *                                                                 
  *                                                                 
  */
-public final class AccelerateDecelerateInterpolator implements ElapsedFactorInterpolator {
+public final class AccelerateDecelerateInterpolator implements InvertibleElapsedFactorInterpolator {
 	public static final class Static {
 		/**
 		 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output.
@@ -42,10 +42,15 @@ public final class AccelerateDecelerateInterpolator implements ElapsedFactorInte
 		public static final double interpolate(double input) {
 			return (1 - Math.cos(input * Math.PI)) / 2;
 		}
+		/**
+		 * Calculates and returns the velocity of the interpolated elapsed fraction at the passed elapsed fraction. In other
+		 * words, returns the derivative of {@link #interpolate(double)} at the passed elapsed fraction.
+		 */
+		public static final double velocity(double input) {
+			return (Math.PI / 2) * Math.sin(input * Math.PI);
+		}
 	}
-	/**
-	 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output.
-	 */
+	@Override
 	public final double deinterpolate(double output) {
 		return (2 * Math.asin(Math.sqrt(output))) / Math.PI;
 	}
@@ -53,4 +58,8 @@ public final class AccelerateDecelerateInterpolator implements ElapsedFactorInte
 	public final double interpolate(double input) {
 		return (1 - Math.cos(input * Math.PI)) / 2;
 	}
+	@Override
+	public final double velocity(double input) {
+		return (Math.PI / 2) * Math.sin(input * Math.PI);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,435 @@
+package org.ilumbo.hakama.interpolation;
+
+/**
+ * Composes interpolators into new ones: reversed, mirrored, chained, scaled and time-warped curves. Compositions are not
+ * evaluated as a stack of interpolators calling each other. Instead, every composition is fused into one flat list of
+ * segments. Each segment transforms the input linearly, passes it to at most one component interpolator, and transforms the
+ * result linearly. Evaluating a composed interpolator therefore costs one segment lookup and one call to a component, no
+ * matter how the composition was built.
+ *
+ * Only a time-warp through a non-linear curve cannot be fused. In that case the two interpolators are nested. If nesting makes
+ * the composition deeper than {@link #MAXIMUM_DEPTH}, the composition is replaced by a {@link TabulatedInterpolator}.
+ *
+ * If every component is invertible (see {@link InvertibleElapsedFactorInterpolator}) and the composition is monotonic, the
+ * composition can be deinterpolated as well. See {@link #isInvertible()}.
+ *
+ * Instances hold no state other than the segments, hence can safely be re-used.
+ */
+public final class ComposedInterpolator implements ElapsedFactorInterpolator {
+	/**
+	 * Collects segments, in order of their inputs.
+	 */
+	private static final class Builder {
+		public ElapsedFactorInterpolator[] components = new ElapsedFactorInterpolator[4];
+		public int count;
+		public double[] ends = new double[4];
+		public double[] inputOffsets = new double[4];
+		public double[] inputScales = new double[4];
+		public double[] outputOffsets = new double[4];
+		public double[] outputScales = new double[4];
+		/**
+		 * Adds a segment which ends at the passed input, and starts where the previously added segment ends. Merges the
+		 * segment into the previously added one if they are equal.
+		 */
+		public final void add(double end, double inputScale, double inputOffset, ElapsedFactorInterpolator component,
+				double outputScale, double outputOffset) {
+			if (0 != count) {
+				final int lastIndex = count - 1;
+				if (component == components[lastIndex] && inputScale == inputScales[lastIndex] &&
+						inputOffset == inputOffsets[lastIndex] && outputScale == outputScales[lastIndex] &&
+						outputOffset == outputOffsets[lastIndex]) {
+					ends[lastIndex] = end;
+					return;
+				}
+			}
+			if (ends.length == count) {
+				final int capacity = count << 1;
+				components = copyOf(components, capacity);
+				ends = copyOf(ends, capacity);
+				inputOffsets = copyOf(inputOffsets, capacity);
+				inputScales = copyOf(inputScales, capacity);
+				outputOffsets = copyOf(outputOffsets, capacity);
+				outputScales = copyOf(outputScales, capacity);
+			}
+			components[count] = component;
+			ends[count] = end;
+			inputOffsets[count] = inputOffset;
+			inputScales[count] = inputScale;
+			outputOffsets[count] = outputOffset;
+			outputScales[count++] = outputScale;
+		}
+		/**
+		 * Adds the segments of the passed composition, with the passed linear transformation applied to their inputs and
+		 * outputs: the added segments represent outputScale * source(inputScale * input + inputOffset) + outputOffset for
+		 * the inputs from the passed start (excluding) up to the passed end (including).
+		 */
+		public final void addTransformed(ComposedInterpolator source, double start, double end, double inputScale,
+				double inputOffset, double outputScale, double outputOffset) {
+			final int sourceCount = source.ends.length;
+			// A constant transformation of the input hits one segment of the source.
+			if (0 == inputScale) {
+				final int index = source.findSegment(inputOffset);
+				add(end, 0, source.inputScales[index] * inputOffset + source.inputOffsets[index], source.components[index],
+						outputScale * source.outputScales[index], outputScale * source.outputOffsets[index] + outputOffset);
+				return;
+			}
+			// Walk through the segments of the source in the order in which the input passes through them. Segment k of the
+			// source spans the transformed inputs from ends[k - 1] up to ends[k].
+			double previousEnd = start;
+			for (int step = 0; sourceCount != step; step++) {
+				final int index = inputScale > 0 ? step : sourceCount - 1 - step;
+				// Determine the input at which the transformed input leaves this segment of the source.
+				final double sourceBoundary;
+				if (inputScale > 0) {
+					sourceBoundary = source.ends[index];
+				} else /* if (inputScale < 0) */ {
+					sourceBoundary = 0 == index ? Double.NEGATIVE_INFINITY : source.ends[index - 1];
+				}
+				final double segmentEnd = Math.min(end, (sourceBoundary - inputOffset) / inputScale);
+				if (segmentEnd > previousEnd) {
+					add(segmentEnd,
+							source.inputScales[index] * inputScale,
+							source.inputScales[index] * inputOffset + source.inputOffsets[index],
+							source.components[index],
+							outputScale * source.outputScales[index],
+							outputScale * source.outputOffsets[index] + outputOffset);
+					previousEnd = segmentEnd;
+				}
+			}
+		}
+		public final ComposedInterpolator build() {
+			final ComposedInterpolator result = new ComposedInterpolator(this);
+			if (result.depth > MAXIMUM_DEPTH) {
+				return new ComposedInterpolator(new TabulatedInterpolator(result, TABLE_SIZE));
+			}
+			return result;
+		}
+	}
+	/**
+	 * Evaluates one interpolator at the output of another. Used only when a time-warp cannot be fused into segments.
+	 */
+	private static final class NestedInterpolator implements ElapsedFactorInterpolator {
+		/**
+		 * The number of interpolators evaluated in a call to this interpolator.
+		 */
+		public final int depth;
+		/**
+		 * The interpolator whose output is passed to the outer one.
+		 */
+		public final ComposedInterpolator inner;
+		/**
+		 * The interpolator that receives the output of the inner one.
+		 */
+		public final ComposedInterpolator outer;
+		public NestedInterpolator(ComposedInterpolator outer, ComposedInterpolator inner) {
+			this.outer = outer;
+			this.inner = inner;
+			depth = outer.depth + inner.depth;
+		}
+		public final double deinterpolate(double output) {
+			return inner.deinterpolate(outer.deinterpolate(output));
+		}
+		@Override
+		public final double interpolate(double input) {
+			return outer.interpolate(inner.interpolate(input));
+		}
+		public final boolean isInvertible() {
+			return outer.invertible && inner.invertible;
+		}
+		@Override
+		public final double velocity(double input) {
+			return outer.velocity(inner.interpolate(input)) * inner.velocity(input);
+		}
+	}
+	/**
+	 * The maximum number of nested interpolators a composition may evaluate in a single call. Deeper compositions are
+	 * tabulated.
+	 */
+	public static final int MAXIMUM_DEPTH = 3;
+	/**
+	 * The size of the tables that replace compositions which are too deep.
+	 */
+	public static final int TABLE_SIZE = 1025;
+	/**
+	 * The component of every segment, or null for segments which are linear.
+	 */
+	private final ElapsedFactorInterpolator[] components;
+	/**
+	 * The maximum number of interpolators evaluated in a call to this interpolator.
+	 */
+	private final int depth;
+	/**
+	 * The input at which every segment ends. The first segment starts at negative infinity, the other segments start where
+	 * the previous one ends. The last segment ends at positive infinity.
+	 */
+	private final double[] ends;
+	/**
+	 * The outputs at the inputs 0, the ends of the segments within the 0-1 range, and 1. Used to deinterpolate.
+	 */
+	private final double[] boundaryOutputs;
+	/**
+	 * Whether this composition can be deinterpolated.
+	 */
+	private final boolean invertible;
+	private final double[] inputOffsets;
+	private final double[] inputScales;
+	private final double[] outputOffsets;
+	private final double[] outputScales;
+	private ComposedInterpolator(Builder builder) {
+		final int count = builder.count;
+		components = copyOf(builder.components, count);
+		ends = copyOf(builder.ends, count);
+		ends[count - 1] = Double.POSITIVE_INFINITY;
+		inputOffsets = copyOf(builder.inputOffsets, count);
+		inputScales = copyOf(builder.inputScales, count);
+		outputOffsets = copyOf(builder.outputOffsets, count);
+		outputScales = copyOf(builder.outputScales, count);
+		// Determine the depth, and whether every segment can be deinterpolated.
+		int depth = 0;
+		boolean invertible = true;
+		for (int index = 0; count != index; index++) {
+			final ElapsedFactorInterpolator component = components[index];
+			if (component instanceof NestedInterpolator) {
+				depth = Math.max(depth, ((NestedInterpolator) component).depth);
+			} else if (null != component) {
+				depth = Math.max(depth, 1);
+			}
+			invertible &= canDeinterpolate(component) && 0 != inputScales[index] && 0 != outputScales[index];
+		}
+		this.depth = depth;
+		// Determine the outputs at the boundaries of the segments. The composition is invertible only if these are strictly
+		// monotonic, as every segment is monotonic on its own.
+		int boundaryCount = 2;
+		for (int index = 0; count - 1 != index; index++) {
+			if (ends[index] > 0 && ends[index] < 1) {
+				boundaryCount++;
+			}
+		}
+		boundaryOutputs = new double[boundaryCount];
+		boundaryOutputs[0] = interpolate(0);
+		boundaryCount = 1;
+		for (int index = 0; count - 1 != index; index++) {
+			if (ends[index] > 0 && ends[index] < 1) {
+				boundaryOutputs[boundaryCount++] = interpolate(ends[index]);
+			}
+		}
+		boundaryOutputs[boundaryCount] = interpolate(1);
+		final double direction = boundaryOutputs[1] - boundaryOutputs[0];
+		for (int index = 0; boundaryCount != index && invertible; index++) {
+			invertible = (boundaryOutputs[index + 1] - boundaryOutputs[index]) * direction > 0;
+		}
+		this.invertible = invertible;
+	}
+	/**
+	 * Creates a composition with a single segment, which evaluates the passed interpolator as it is.
+	 */
+	private ComposedInterpolator(ElapsedFactorInterpolator component) {
+		this(createBuilder(component));
+	}
+	/**
+	 * Returns whether the passed component of a segment can be deinterpolated.
+	 */
+	private static final boolean canDeinterpolate(ElapsedFactorInterpolator component) {
+		if (null == component || component instanceof InvertibleElapsedFactorInterpolator) {
+			return true;
+		} else if (component instanceof TabulatedInterpolator) {
+			return ((TabulatedInterpolator) component).isMonotonic();
+		} else if (component instanceof NestedInterpolator) {
+			return ((NestedInterpolator) component).isInvertible();
+		}
+		return false;
+	}
+	/**
+	 * Returns an interpolator which uses the first passed interpolator for the inputs up to the passed input split, and the
+	 * second one after. The first interpolator produces the outputs from 0 to the passed output split, the second one those
+	 * from the output split to 1. For instance, chaining an accelerate and a decelerate interpolator at .5 and .5 produces a
+	 * curve similar to the accelerate-decelerate interpolator. Both splits must be between 0 and 1 (both excluding).
+	 */
+	public static final ComposedInterpolator chain(ElapsedFactorInterpolator first, ElapsedFactorInterpolator second,
+			double inputSplit, double outputSplit) {
+		if (false == (inputSplit > 0 && inputSplit < 1)) {
+			throw new IllegalArgumentException("The input split must be between 0 and 1");
+		}
+		if (false == (outputSplit > 0 && outputSplit < 1)) {
+			throw new IllegalArgumentException("The output split must be between 0 and 1");
+		}
+		final Builder builder = new Builder();
+		builder.addTransformed(of(first), Double.NEGATIVE_INFINITY, inputSplit,
+				1 / inputSplit, 0,
+				outputSplit, 0);
+		builder.addTransformed(of(second), inputSplit, Double.POSITIVE_INFINITY,
+				1 / (1 - inputSplit), -inputSplit / (1 - inputSplit),
+				1 - outputSplit, outputSplit);
+		return builder.build();
+	}
+	private static final double[] copyOf(double[] source, int length) {
+		final double[] result = new double[length];
+		System.arraycopy(source, 0, result, 0, Math.min(length, source.length));
+		return result;
+	}
+	private static final ElapsedFactorInterpolator[] copyOf(ElapsedFactorInterpolator[] source, int length) {
+		final ElapsedFactorInterpolator[] result = new ElapsedFactorInterpolator[length];
+		System.arraycopy(source, 0, result, 0, Math.min(length, source.length));
+		return result;
+	}
+	private static final Builder createBuilder(ElapsedFactorInterpolator component) {
+		final Builder result = new Builder();
+		result.add(Double.POSITIVE_INFINITY, 1, 0, component, 1, 0);
+		return result;
+	}
+	/**
+	 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output. Throws an
+	 * UnsupportedOperationException if this composition is not invertible (see {@link #isInvertible()}).
+	 */
+	public final double deinterpolate(double output) {
+		if (false == invertible) {
+			throw new UnsupportedOperationException("The composition is not invertible");
+		}
+		// Find the segment that produces the output, by finding the boundaries the output is between.
+		final boolean increasing = boundaryOutputs[1] > boundaryOutputs[0];
+		int boundaryIndex = 1;
+		while (boundaryOutputs.length - 1 != boundaryIndex &&
+				(increasing ? output > boundaryOutputs[boundaryIndex] : output < boundaryOutputs[boundaryIndex])) {
+			boundaryIndex++;
+		}
+		// The boundaries within the 0-1 range are the ends of the segments within that range. Skip the segments which end
+		// before that range, then skip a segment for every boundary the output is past.
+		int index = 0;
+		while (ends[index] <= 0) {
+			index++;
+		}
+		index += boundaryIndex - 1;
+		final ElapsedFactorInterpolator component = components[index];
+		final double componentOutput = (output - outputOffsets[index]) / outputScales[index];
+		final double componentInput;
+		if (null == component) {
+			componentInput = componentOutput;
+		} else if (component instanceof InvertibleElapsedFactorInterpolator) {
+			componentInput = ((InvertibleElapsedFactorInterpolator) component).deinterpolate(componentOutput);
+		} else if (component instanceof TabulatedInterpolator) {
+			componentInput = ((TabulatedInterpolator) component).deinterpolate(componentOutput);
+		} else /* if (component instanceof NestedInterpolator) */ {
+			componentInput = ((NestedInterpolator) component).deinterpolate(componentOutput);
+		}
+		return (componentInput - inputOffsets[index]) / inputScales[index];
+	}
+	/**
+	 * Returns the index of the segment which contains the passed input.
+	 */
+	private final int findSegment(double input) {
+		// Most compositions have only a few segments, so a linear search is used.
+		int result = 0;
+		while (input > ends[result]) {
+			result++;
+		}
+		return result;
+	}
+	/**
+	 * Returns the number of segments this composition consists of.
+	 */
+	public final int getSegmentCount() {
+		return ends.length;
+	}
+	@Override
+	public final double interpolate(double input) {
+		final int index = findSegment(input);
+		final ElapsedFactorInterpolator component = components[index];
+		final double componentInput = inputScales[index] * input + inputOffsets[index];
+		if (null == component) {
+			return outputScales[index] * componentInput + outputOffsets[index];
+		}
+		return outputScales[index] * component.interpolate(componentInput) + outputOffsets[index];
+	}
+	/**
+	 * Returns whether this composition can be deinterpolated. This is the case if every component can be deinterpolated, and
+	 * the composition is strictly monotonic.
+	 */
+	public final boolean isInvertible() {
+		return invertible;
+	}
+	/**
+	 * Returns an interpolator which produces the passed interpolator, for the first half of the inputs twice as fast, and for
+	 * the second half in reverse. In other words, a curve that goes from 0 to 1 and back, useful for yoyo glides.
+	 */
+	public static final ComposedInterpolator mirror(ElapsedFactorInterpolator interpolator) {
+		final ComposedInterpolator source = of(interpolator);
+		final Builder builder = new Builder();
+		builder.addTransformed(source, Double.NEGATIVE_INFINITY, .5, 2, 0, 1, 0);
+		builder.addTransformed(source, .5, Double.POSITIVE_INFINITY, -2, 2, 1, 0);
+		return builder.build();
+	}
+	/**
+	 * Returns the passed interpolator as a composition. Returns the passed interpolator itself if it is a composition already.
+	 */
+	public static final ComposedInterpolator of(ElapsedFactorInterpolator interpolator) {
+		if (interpolator instanceof ComposedInterpolator) {
+			return (ComposedInterpolator) interpolator;
+		}
+		return new ComposedInterpolator(interpolator);
+	}
+	/**
+	 * Returns an interpolator which produces the passed interpolator in reverse: 1 - interpolator(1 - input). The reverse of a
+	 * decelerating curve accelerates, and vice versa.
+	 */
+	public static final ComposedInterpolator reverse(ElapsedFactorInterpolator interpolator) {
+		final Builder builder = new Builder();
+		builder.addTransformed(of(interpolator), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -1, 1, -1, 1);
+		return builder.build();
+	}
+	/**
+	 * Returns an interpolator which scales and offsets the outputs of the passed interpolator: scale * interpolator(input) +
+	 * offset.
+	 */
+	public static final ComposedInterpolator scale(ElapsedFactorInterpolator interpolator, double scale, double offset) {
+		final Builder builder = new Builder();
+		builder.addTransformed(of(interpolator), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1, 0, scale, offset);
+		return builder.build();
+	}
+	@Override
+	public final double velocity(double input) {
+		final int index = findSegment(input);
+		final ElapsedFactorInterpolator component = components[index];
+		if (null == component) {
+			return outputScales[index] * inputScales[index];
+		}
+		return outputScales[index] * inputScales[index] *
+				component.velocity(inputScales[index] * input + inputOffsets[index]);
+	}
+	/**
+	 * Returns an interpolator which passes the output of the passed warp to the passed interpolator: interpolator(warp(input)).
+	 * The warp changes the time base of the interpolator. Linear segments of the warp are fused with the interpolator.
+	 * Non-linear segments are fused only if the interpolator is linear, and are nested otherwise.
+	 */
+	public static final ComposedInterpolator warp(ElapsedFactorInterpolator interpolator, ElapsedFactorInterpolator warp) {
+		final ComposedInterpolator outer = of(interpolator);
+		final ComposedInterpolator inner = of(warp);
+		final boolean outerLinear = 1 == outer.ends.length && null == outer.components[0];
+		final Builder builder = new Builder();
+		double previousEnd = Double.NEGATIVE_INFINITY;
+		for (int index = 0; inner.ends.length != index; index++) {
+			final double end = inner.ends[index];
+			final ElapsedFactorInterpolator component = inner.components[index];
+			if (null == component) {
+				// This segment of the warp is linear, so the interpolator can be transformed.
+				builder.addTransformed(outer, previousEnd, end,
+						inner.outputScales[index] * inner.inputScales[index],
+						inner.outputScales[index] * inner.inputOffsets[index] + inner.outputOffsets[index],
+						1, 0);
+			} else if (outerLinear) {
+				// The interpolator is linear, so the segment of the warp can be transformed.
+				builder.add(end, inner.inputScales[index], inner.inputOffsets[index], component,
+						outer.outputScales[0] * outer.inputScales[0] * inner.outputScales[index],
+						outer.outputScales[0] * (outer.inputScales[0] * inner.outputOffsets[index] + outer.inputOffsets[0]) +
+								outer.outputOffsets[0]);
+			} else /* if (neither is linear) */ {
+				// Nest the interpolator and the segment of the warp.
+				final Builder segmentBuilder = new Builder();
+				segmentBuilder.add(Double.POSITIVE_INFINITY, inner.inputScales[index], inner.inputOffsets[index], component,
+						inner.outputScales[index], inner.outputOffsets[index]);
+				builder.add(end, 1, 0, new NestedInterpolator(outer, new ComposedInterpolator(segmentBuilder)), 1, 0);
+			}
+			previousEnd = end;
+		}
+		return builder.build();
+	}
+}
\ No newline at end of file
@@ -26,7 +26,7 @@ package org.ilumbo.hakama.interpolation;
  *                                                                 
  *                                                                 
  */
-public final class DecelerateInterpolator implements ElapsedFactorInterpolator {
+public final class DecelerateInterpolator implements InvertibleElapsedFactorInterpolator {
 	public static final class Static {
 		/**
 		 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output.
@@ -42,15 +42,24 @@ public final class DecelerateInterpolator implements ElapsedFactorInterpolator {
 		public static final double interpolate(double input) {
 			return Math.sin(input * Math.PI / 2);
 		}
+		/**
+		 * Calculates and returns the velocity of the interpolated elapsed fraction at the passed elapsed fraction. In other
+		 * words, returns the derivative of {@link #interpolate(double)} at the passed elapsed fraction.
+		 */
+		public static final double velocity(double input) {
+			return (Math.PI / 2) * Math.cos(input * Math.PI / 2);
+		}
 	}
-	/**
-	 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output.
-	 */
-	public static final double deinterpolate(double output) {
+	@Override
+	public final double deinterpolate(double output) {
 		return (2 * Math.asin(output)) / Math.PI;
 	}
 	@Override
 	public final double interpolate(double input) {
 		return Math.sin(input * Math.PI / 2);
 	}
+	@Override
+	public final double velocity(double input) {
+		return (Math.PI / 2) * Math.cos(input * Math.PI / 2);
+	}
 }
\ No newline at end of file
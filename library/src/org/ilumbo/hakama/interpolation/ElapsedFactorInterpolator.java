@@ -11,4 +11,10 @@ public interface ElapsedFactorInterpolator {
 	 * or less than 0 (anticipation).
 	 */
 	public double interpolate(double input);
+	/**
+	 * Calculates and returns the velocity of the interpolated elapsed fraction at the passed elapsed fraction. In other words,
+	 * returns the derivative of {@link #interpolate(double)} at the passed elapsed fraction. A linear interpolation would have
+	 * a velocity of 1 throughout.
+	 */
+	public double velocity(double input);
 }
\ No newline at end of file
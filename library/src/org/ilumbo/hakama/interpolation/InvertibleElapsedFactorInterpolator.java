@@ -0,0 +1,11 @@
+package org.ilumbo.hakama.interpolation;
+
+/**
+ * An elapsed factor interpolator which can calculate the input for a passed output. Such interpolators are monotonic.
+ */
+public interface InvertibleElapsedFactorInterpolator extends ElapsedFactorInterpolator {
+	/**
+	 * Calculates and returns the input for which {@link #interpolate(double)} would return the passed output.
+	 */
+	public double deinterpolate(double output);
+}
\ No newline at end of file
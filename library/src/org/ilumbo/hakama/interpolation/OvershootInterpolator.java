@@ -53,6 +53,13 @@ public class OvershootInterpolator implements ElapsedFactorInterpolator {
 		public static final double interpolate(double input, double tension) {
 			return (input - 1) * (input - 1) * (tension * input + input - 1) + 1;
 		}
+		/**
+		 * Calculates and returns the velocity of the interpolated elapsed fraction at the passed elapsed fraction. In other
+		 * words, returns the derivative of {@link #interpolate(double, double)} at the passed elapsed fraction.
+		 */
+		public static final double velocity(double input, double tension) {
+			return (input - 1) * (3 * (tension + 1) * input - tension - 3);
+		}
 	}
 	/**
 	 * Calculates and returns the tension for the overshoot interpolator that would cause it to exceed the 1 by the passed
@@ -86,6 +93,12 @@ public class OvershootInterpolator implements ElapsedFactorInterpolator {
 				Math.sqrt(outputCubed - 2 * outputSquared + output) + 17 * output + 1, 1d / 3);
 		return .75 * part - (-729 * outputSquared + 810 * output - 81) / (108 * part) + 2.25 * overshoot;
 	}
+	/**
+	 * Returns the tension of this interpolator.
+	 */
+	public final double getTension() {
+		return tension;
+	}
 	@Override
 	public final double interpolate(double input) {
 		// This equation was taken from Android's overshoot interpolator. The source code of that source gives a hint of how
@@ -98,4 +111,12 @@ public class OvershootInterpolator implements ElapsedFactorInterpolator {
 		//			↓
 		return (input - 1) * (input - 1) * (tension * input + input - 1) + 1;
 	}
+	@Override
+	public final double velocity(double input) {
+		// The derivative of the equation in the interpolate method:
+		//
+		//		o'(input) = 2 * (input - 1) * ((tension + 1) * input - 1) + (input - 1) * (input - 1) * (tension + 1)
+		//			↓
+		return (input - 1) * (3 * (tension + 1) * input - tension - 3);
+	}
 }
\ No newline at end of file
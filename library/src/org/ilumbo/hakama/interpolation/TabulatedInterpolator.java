@@ -0,0 +1,93 @@
+package org.ilumbo.hakama.interpolation;
+
+/**
+ * Approximates another interpolator using a table of outputs at equally spaced inputs, interpolating linearly between them.
+ * Evaluating a table costs the same regardless of how expensive the approximated interpolator is, which makes tables useful
+ * for deeply composed curves (see {@link ComposedInterpolator}).
+ *
+ * Instances hold no state other than the table, hence can safely be re-used.
+ */
+public final class TabulatedInterpolator implements ElapsedFactorInterpolator {
+	/**
+	 * The outputs of the approximated interpolator, at inputs 0, 1 / (length - 1), 2 / (length - 1) … 1.
+	 */
+	private final double[] outputs;
+	/**
+	 * 1 if the outputs are strictly increasing, -1 if they are strictly decreasing, 0 otherwise. Only monotonic tables can be
+	 * deinterpolated.
+	 */
+	private final int monotonicity;
+	/**
+	 * Creates a table of the passed size, which must be at least 2, approximating the passed interpolator.
+	 */
+	public TabulatedInterpolator(ElapsedFactorInterpolator source, int size) {
+		if (size < 2) {
+			throw new IllegalArgumentException("The size must be at least 2");
+		}
+		outputs = new double[size];
+		final int lastIndex = size - 1;
+		for (int index = 0; size != index; index++) {
+			outputs[index] = source.interpolate((double) index / lastIndex);
+		}
+		// Determine the monotonicity.
+		int monotonicity = outputs[1] > outputs[0] ? 1 : (outputs[1] < outputs[0] ? -1 : 0);
+		for (int index = 1; lastIndex != index && 0 != monotonicity; index++) {
+			if ((outputs[index + 1] - outputs[index]) * monotonicity <= 0) {
+				monotonicity = 0;
+			}
+		}
+		this.monotonicity = monotonicity;
+	}
+	/**
+	 * Calculates and returns the (approximate) input for which {@link #interpolate(double)} would return the passed output.
+	 * Throws an UnsupportedOperationException if the table is not monotonic (see {@link #isMonotonic()}).
+	 */
+	public final double deinterpolate(double output) {
+		if (0 == monotonicity) {
+			throw new UnsupportedOperationException("The table is not monotonic");
+		}
+		// Find the last entry which is not past the output, using a binary search.
+		int low = 0;
+		int high = outputs.length - 2;
+		while (low != high) {
+			final int middle = (low + high + 1) >>> 1;
+			if ((output - outputs[middle]) * monotonicity >= 0) {
+				low = middle;
+			} else /* if (the output is before the middle entry) */ {
+				high = middle - 1;
+			}
+		}
+		return (low + (output - outputs[low]) / (outputs[low + 1] - outputs[low])) / (outputs.length - 1);
+	}
+	@Override
+	public final double interpolate(double input) {
+		final int lastIndex = outputs.length - 1;
+		final double position = input * lastIndex;
+		// Clamp the index, so inputs outside of the 0-1 range are extrapolated from the first or last pair of entries.
+		int index = (int) position;
+		if (index < 0) {
+			index = 0;
+		} else if (index >= lastIndex) {
+			index = lastIndex - 1;
+		}
+		return outputs[index] + (outputs[index + 1] - outputs[index]) * (position - index);
+	}
+	/**
+	 * Returns whether the outputs in the table are strictly increasing or strictly decreasing, which is required to
+	 * deinterpolate.
+	 */
+	public final boolean isMonotonic() {
+		return 0 != monotonicity;
+	}
+	@Override
+	public final double velocity(double input) {
+		final int lastIndex = outputs.length - 1;
+		int index = (int) (input * lastIndex);
+		if (index < 0) {
+			index = 0;
+		} else if (index >= lastIndex) {
+			index = lastIndex - 1;
+		}
+		return (outputs[index + 1] - outputs[index]) * lastIndex;
+	}
+}
\ No newline at end of file
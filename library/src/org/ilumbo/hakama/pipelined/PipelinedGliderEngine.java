@@ -0,0 +1,440 @@
+package org.ilumbo.hakama.pipelined;
+
+import org.ilumbo.hakama.GlideClock;
+import org.ilumbo.hakama.GliderEngine;
+import org.ilumbo.hakama.PresentationTimePredictor;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.Choreographer.FrameCallback;
+import android.view.View;
+
+/**
+ * An engine for apps with many gliders, which determines the values on a worker thread instead of the UI thread.
+ *
+ * The engines share a pipeline. While the UI thread draws a frame, the worker thread of the pipeline determines the values
+ * for the next frame, as those are fully determined by the value determiners. The values are published through a pair of
+ * primitive arrays: the front one is read by {@link #getValue()} without locking, the back one is written. When the next
+ * frame starts the two are swapped. If the worker is late (or a glide was started or stopped after the worker started), the
+ * values are determined on the UI thread instead, like the choreographed engine does.
+ *
+ * Unlike the choreographed engine, this engine invalidates the view of every glider that is gliding on every frame, whether
+ * or not that view was drawn.
+ *
+ * The engines in a pipeline share its clock (see {@link Pipeline#setClock(GlideClock)}), as their values are determined for
+ * the same frame time. While that clock is paused, the pipeline requests no frames and does not ask the worker to determine
+ * values.
+ *
+ * The state of the glides lives in the pipeline, so an engine itself occupies only 24 bytes. Engines in a pipeline that uses
+ * a clock allocate their extras, for 32 bytes more.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public final class PipelinedGliderEngine extends GliderEngine {
+	/**
+	 * Shared by the engines, determines their values on a worker thread. A pipeline has a fixed capacity: the maximum number
+	 * of engines that can use it at the same time.
+	 *
+	 * Construct a pipeline on the UI thread, and quit it when it is no longer used.
+	 */
+	public static final class Pipeline implements FrameCallback, Runnable {
+		/**
+		 * The two arrays of values. The one at the front index is read by the engines, the other one is written.
+		 */
+		private final double[][] buffers;
+		/**
+		 * Whether the back buffer holds values determined by the worker, for the back time and the back generation.
+		 */
+		private boolean backReady;
+		/**
+		 * The generation for which the values in the back buffer were determined.
+		 */
+		private int backGeneration;
+		/**
+		 * The time for which the values in the back buffer were determined.
+		 */
+		private long backTime;
+		private final Choreographer choreographer;
+		/**
+		 * The clock the engines use, or null if they use the real time.
+		 */
+		private GlideClock clock;
+		/**
+		 * The engines that use this pipeline, indexed by their slot. null for slots that are free.
+		 */
+		private final PipelinedGliderEngine[] engines;
+		/**
+		 * Whether a frame callback has been posted, and has not been called yet.
+		 */
+		private boolean frameCallbackPosted;
+		/**
+		 * The estimated interval between two consecutive frames, in nanoseconds.
+		 */
+		private long frameInterval;
+		/**
+		 * The index of the buffer the engines read. Written only on the UI thread.
+		 */
+		private volatile int frontIndex;
+		/**
+		 * The time for which the values in the front buffer were determined.
+		 */
+		private long frontTime;
+		/**
+		 * Incremented whenever a glide is started or stopped. Values determined by the worker for an older generation are
+		 * discarded.
+		 */
+		private int generation;
+		/**
+		 * The views that are invalidated after a frame. Only used on the UI thread.
+		 */
+		private final View[] invalidatees;
+		/**
+		 * Hold this lock to access anything but the front buffer and the fields used only by the worker.
+		 */
+		private final Object lock;
+		/**
+		 * The time of the previous frame, or 0 if the previous frame was not part of the same series of glides.
+		 */
+		private long previousFrameTime;
+		/**
+		 * Whether the worker thread has been stopped.
+		 */
+		private boolean quit;
+		/**
+		 * The time for which the worker should determine the values, in the time base of the engines.
+		 */
+		private long requestedTime;
+		/**
+		 * The value of every engine that is not gliding, indexed by slot.
+		 */
+		private final double[] restingValues;
+		private final Looper uiLooper;
+		/**
+		 * The value determiners of the engines that are gliding, indexed by slot.
+		 */
+		private final ValueDeterminer[] valueDeterminers;
+		private final Handler workerHandler;
+		/**
+		 * Whether the worker has been asked to determine values, and has not started doing so yet.
+		 */
+		private boolean workerRequested;
+		private final HandlerThread workerThread;
+		/**
+		 * The value determiners the worker uses, copied from the value determiners. Only used by the worker.
+		 */
+		private final ValueDeterminer[] workerValueDeterminers;
+		/**
+		 * The values the worker determines, before they are copied into the back buffer. Only used by the worker.
+		 */
+		private final double[] workerValues;
+		public Pipeline(int capacity) {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("The capacity must be positive");
+			}
+			buffers = new double[][] {new double[capacity], new double[capacity]};
+			choreographer = Choreographer.getInstance();
+			engines = new PipelinedGliderEngine[capacity];
+			frameInterval = PresentationTimePredictor.DEFAULT_FRAME_INTERVAL;
+			invalidatees = new View[capacity];
+			lock = new Object();
+			restingValues = new double[capacity];
+			uiLooper = Looper.myLooper();
+			valueDeterminers = new ValueDeterminer[capacity];
+			workerValueDeterminers = new ValueDeterminer[capacity];
+			workerValues = new double[capacity];
+			workerThread = new HandlerThread("Hakama pipeline");
+			workerThread.start();
+			workerHandler = new Handler(workerThread.getLooper());
+		}
+		/**
+		 * Assigns a slot to the passed engine, and returns that slot.
+		 */
+		private final int attach(PipelinedGliderEngine engine, double initialValue) {
+			synchronized (lock) {
+				for (int slot = 0; engines.length != slot; slot++) {
+					if (null == engines[slot]) {
+						engines[slot] = engine;
+						restingValues[slot] = initialValue;
+						buffers[0][slot] = initialValue;
+						buffers[1][slot] = initialValue;
+						if (null != clock) {
+							engine.applyClock(clock);
+						}
+						// The worker might be determining values for the previous occupant of the slot. Discard those, or
+						// they would overwrite the initial value when published.
+						generation++;
+						return slot;
+					}
+				}
+			}
+			throw new IllegalStateException("The pipeline is full");
+		}
+		/**
+		 * Frees the passed slot.
+		 */
+		private final void detach(int slot) {
+			synchronized (lock) {
+				// Let the engine leave the clock, which would keep a reference to it otherwise.
+				if (null != clock) {
+					engines[slot].applyClock(null);
+				}
+				engines[slot] = null;
+				valueDeterminers[slot] = null;
+				generation++;
+			}
+		}
+		/**
+		 * Determines the values of all of the slots for the passed time, using the passed value determiners and resting
+		 * values, and writes them into the passed array.
+		 */
+		private static final void determineValues(ValueDeterminer[] valueDeterminers, double[] restingValues, long time,
+				double[] values) {
+			for (int slot = 0; valueDeterminers.length != slot; slot++) {
+				final ValueDeterminer valueDeterminer = valueDeterminers[slot];
+				if (null == valueDeterminer) {
+					values[slot] = restingValues[slot];
+				} else /* if (null != valueDeterminer) */ {
+					values[slot] = valueDeterminer.determineValue(time);
+				}
+			}
+		}
+		/**
+		 * @hide
+		 */
+		@Override
+		public final void doFrame(long frameTime) {
+			int invalidateeCount = 0;
+			synchronized (lock) {
+				frameCallbackPosted = false;
+				if (0 != previousFrameTime) {
+					frameInterval = PresentationTimePredictor.estimateFrameInterval(frameInterval,
+							frameTime - previousFrameTime);
+				}
+				// Convert the frame time into the time base of the engines. The frame interval above is estimated in real
+				// time, as the frames are.
+				final GlideClock clock = this.clock;
+				final long frameGroupTime = null == clock ? frameTime : clock.toGroupTime(frameTime);
+				// Use the values determined by the worker if they are for this frame, and no glides were started or stopped
+				// since. Otherwise, the worker is late: determine the values here.
+				final int backIndex = 1 - frontIndex;
+				final double[] values = buffers[backIndex];
+				final long time;
+				if (backReady && generation == backGeneration && Math.abs(backTime - frameGroupTime) <= frameInterval >> 2) {
+					time = backTime;
+				} else /* if (the worker is late) */ {
+					time = frameGroupTime;
+					determineValues(valueDeterminers, restingValues, time, values);
+				}
+				backReady = false;
+				// Retire the value determiners of completed glides, and collect the views of the engines that were gliding.
+				boolean gliding = false;
+				for (int slot = 0; valueDeterminers.length != slot; slot++) {
+					final ValueDeterminer valueDeterminer = valueDeterminers[slot];
+					if (null != valueDeterminer) {
+						if (time > valueDeterminer.endTime) {
+							valueDeterminers[slot] = null;
+							restingValues[slot] = values[slot];
+						} else /* if (time <= valueDeterminer.endTime) */ {
+							gliding = true;
+						}
+						invalidatees[invalidateeCount++] = engines[slot].invalidatee;
+					}
+				}
+				// Swap the buffers. The write to the volatile front index publishes the values to the engines.
+				frontTime = time;
+				frontIndex = backIndex;
+				// If any glide is still happening, ask the worker to determine the values for the next frame, and ensure this
+				// pipeline is notified when that frame starts. Do not while the clock is paused: the values would not change.
+				// The clock notifies the engines when it is resumed, and they post the frame callback again.
+				if (gliding && (null == clock || false == clock.isPaused())) {
+					previousFrameTime = frameTime;
+					requestedTime = null == clock ? frameTime + frameInterval : clock.toGroupTime(frameTime + frameInterval);
+					if (false == (quit || workerRequested)) {
+						workerRequested = true;
+						workerHandler.post(this);
+					}
+					postFrameCallback();
+				} else /* if (false == gliding || the clock is paused) */ {
+					previousFrameTime = 0;
+				}
+			}
+			// Invalidate outside of the synchronized block.
+			while (0 != invalidateeCount) {
+				invalidatees[--invalidateeCount].invalidate();
+				invalidatees[invalidateeCount] = null;
+			}
+		}
+		/**
+		 * Ensures this pipeline is notified when the next frame starts. Hold the lock when calling this method.
+		 */
+		private final void postFrameCallback() {
+			if (false == frameCallbackPosted) {
+				frameCallbackPosted = true;
+				choreographer.postFrameCallback(this);
+			}
+		}
+		/**
+		 * Stops the worker thread, and cancels the pending frame callback. Glides that are happening stop changing until a
+		 * glide is started or stopped. Afterwards, the values of the engines that use this pipeline are determined on the UI
+		 * thread.
+		 */
+		public final void quit() {
+			synchronized (lock) {
+				quit = true;
+				// Reset the flags, as the frame callback and the request to the worker will never be handled. Otherwise, no
+				// frame callback would be posted again.
+				choreographer.removeFrameCallback(this);
+				frameCallbackPosted = false;
+				workerRequested = false;
+				backReady = false;
+			}
+			workerThread.quit();
+		}
+		/**
+		 * @hide
+		 */
+		@Override
+		public final void run() {
+			// Copy the state, so the values can be determined without holding the lock.
+			final long time;
+			final int generation;
+			synchronized (lock) {
+				workerRequested = false;
+				time = requestedTime;
+				generation = this.generation;
+				System.arraycopy(valueDeterminers, 0, workerValueDeterminers, 0, valueDeterminers.length);
+				System.arraycopy(restingValues, 0, workerValues, 0, restingValues.length);
+			}
+			determineValues(workerValueDeterminers, workerValues, time, workerValues);
+			// Publish the values into the back buffer, unless a glide was started or stopped in the meantime or a newer
+			// frame was requested. The back buffer is not read by the engines, so writing to it is safe.
+			synchronized (lock) {
+				if (generation == this.generation && time == requestedTime) {
+					System.arraycopy(workerValues, 0, buffers[1 - frontIndex], 0, workerValues.length);
+					backReady = true;
+					backGeneration = generation;
+					backTime = time;
+				}
+			}
+		}
+		/**
+		 * Makes the engines that use this pipeline use the passed clock, or the real time if null is passed. Engines that
+		 * start using this pipeline later use the clock as well. Like {@link GliderEngine#setClock(GlideClock)}, set the clock
+		 * only while no value is being glided.
+		 */
+		public final void setClock(GlideClock clock) {
+			synchronized (lock) {
+				if (this.clock == clock) {
+					return;
+				}
+				this.clock = clock;
+				for (final PipelinedGliderEngine engine : engines) {
+					if (null != engine) {
+						engine.applyClock(clock);
+					}
+				}
+				// Values determined by the worker are in the old time base.
+				generation++;
+			}
+		}
+		/**
+		 * Sets the value determiner and resting value of the passed slot, and ensures a frame will be determined.
+		 */
+		private final void update(int slot, ValueDeterminer valueDeterminer, double restingValue) {
+			synchronized (lock) {
+				valueDeterminers[slot] = valueDeterminer;
+				restingValues[slot] = restingValue;
+				generation++;
+				// On the UI thread, update the front buffer right away, so getValue returns the expected result. On other
+				// threads the front buffer must not be touched; it is updated when the next frame starts.
+				if (uiLooper == Looper.myLooper()) {
+					buffers[frontIndex][slot] = restingValue;
+				}
+				postFrameCallback();
+			}
+		}
+	}
+	/**
+	 * The pipeline this engine uses.
+	 */
+	private final Pipeline pipeline;
+	/**
+	 * The slot in the pipeline assigned to this engine.
+	 */
+	private final int slot;
+	/**
+	 * Uses the passed pipeline, which must have a free slot.
+	 */
+	public PipelinedGliderEngine(View invalidatee, double initialValue, Pipeline pipeline) {
+		super(invalidatee);
+		this.pipeline = pipeline;
+		slot = pipeline.attach(this, initialValue);
+	}
+	/**
+	 * Makes this engine use the passed clock. Called by the pipeline, which holds its lock.
+	 */
+	private final void applyClock(GlideClock clock) {
+		super.setClock(clock);
+	}
+	@Override
+	public final double getEndValue() {
+		synchronized (pipeline.lock) {
+			final ValueDeterminer valueDeterminer = pipeline.valueDeterminers[slot];
+			if (null != valueDeterminer) {
+				return valueDeterminer.endValue;
+			} else /* if (null == valueDeterminer) */ {
+				return pipeline.restingValues[slot];
+			}
+		}
+	}
+	@Override
+	public final double getValue() {
+		// No lock is required: the front buffer is only written on the UI thread, and published through the front index.
+		return pipeline.buffers[pipeline.frontIndex][slot];
+	}
+	@Override
+	public final double getVelocity() {
+		synchronized (pipeline.lock) {
+			final ValueDeterminer valueDeterminer = pipeline.valueDeterminers[slot];
+			if (null != valueDeterminer) {
+				return convertVelocity(valueDeterminer.determineVelocity(pipeline.frontTime));
+			} else /* if (null == valueDeterminer) */ {
+				return 0;
+			}
+		}
+	}
+	@Override
+	protected final void glide(ValueDeterminer newValueDeterminer) {
+		pipeline.update(slot, newValueDeterminer, newValueDeterminer.startValue);
+	}
+	@Override
+	protected final void onClockResumed() {
+		// Request frames again, as the pipeline stopped doing so while the clock was paused.
+		synchronized (pipeline.lock) {
+			if (null != pipeline.valueDeterminers[slot]) {
+				pipeline.postFrameCallback();
+			}
+		}
+	}
+	/**
+	 * Frees the slot of this engine in the pipeline. The engine must not be used afterwards.
+	 */
+	public final void release() {
+		pipeline.detach(slot);
+	}
+	/**
+	 * Makes every engine in the pipeline of this engine use the passed clock (see {@link Pipeline#setClock(GlideClock)}), as
+	 * the values of those engines are determined for the same frame time.
+	 */
+	@Override
+	public final void setClock(GlideClock clock) {
+		pipeline.setClock(clock);
+	}
+	@Override
+	public final void stop(double value) {
+		pipeline.update(slot, null, value);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package org.ilumbo.hakama.documentation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import org.ilumbo.hakama.OfflineFrameRenderer;
+import org.ilumbo.hakama.OfflineFrameRenderer.GlideDefinition;
+import org.ilumbo.hakama.interpolation.AccelerateDecelerateInterpolator;
+import org.ilumbo.hakama.interpolation.AccelerateInterpolator;
+import org.ilumbo.hakama.interpolation.DecelerateInterpolator;
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
+import org.ilumbo.hakama.interpolation.OvershootInterpolator;
+
+/**
+ * Compares the two paths an interpolated value determiner takes, under a workload which mixes all of the built-in
+ * interpolators. The dedicated path is taken by the built-in interpolators, whose curves are called through their Static
+ * classes. The generic path is taken by custom interpolators, which are called through the {@link ElapsedFactorInterpolator}
+ * interface. The generic path is measured by wrapping every built-in interpolator in a custom one, which makes the call to
+ * the curve megamorphic. The values are determined by the {@link OfflineFrameRenderer}, in a single thread.
+ *
+ * Every path runs in a virtual machine of its own, so the profile the just-in-time compiler gathers for the one path does not
+ * affect the code it compiles for the other. Each of those virtual machines is forked a number of times, alternating between
+ * the paths so drift of the machine affects both alike, and runs warm-up rounds before the measured rounds. The median of
+ * the measured rounds of every fork is reported, followed by the median and the spread of those medians.
+ *
+ * Usage: DeterminerBenchmark [--forks=n]
+ *
+ * Run this on the virtual machine that is to be measured. The times are in nanoseconds per determined value.
+ */
+public final class DeterminerBenchmark {
+	/**
+	 * Calls the interpolator it wraps through the interface, which is the path custom interpolators take.
+	 */
+	private static final class CustomInterpolator implements ElapsedFactorInterpolator {
+		private final ElapsedFactorInterpolator wrapped;
+		public CustomInterpolator(ElapsedFactorInterpolator wrapped) {
+			this.wrapped = wrapped;
+		}
+		@Override
+		public final double interpolate(double input) {
+			return wrapped.interpolate(input);
+		}
+		@Override
+		public final double velocity(double input) {
+			return wrapped.velocity(input);
+		}
+	}
+	/**
+	 * The number of glides that are rendered, alternating between the built-in interpolators.
+	 */
+	private static final int GLIDE_COUNT = 64;
+	/**
+	 * The frame rate at which the glides are rendered. The glides take 250 milliseconds, so every glide is evaluated 25001
+	 * times per round.
+	 */
+	private static final int FRAME_RATE = 100000;
+	private static final String PATH_DEDICATED = "dedicated";
+	private static final String PATH_GENERIC = "generic";
+	/**
+	 * The number of rounds that is measured in every fork, and the number of warm-up rounds that precede them.
+	 */
+	private static final int ROUND_COUNT = 15;
+	/**
+	 * Prevents the just-in-time compiler from eliminating the rendering.
+	 */
+	private static double sink;
+	/**
+	 * Runs the passed path in a new virtual machine, and returns the median of its measured rounds.
+	 */
+	private static final double fork(String path) throws Exception {
+		final Process process = new ProcessBuilder(
+				System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+				"-cp", System.getProperty("java.class.path"),
+				DeterminerBenchmark.class.getName(), path)
+				.redirectErrorStream(true)
+				.start();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		final List<Double> roundTimes = new ArrayList<Double>(ROUND_COUNT);
+		String line;
+		while (null != (line = reader.readLine())) {
+			try {
+				roundTimes.add(Double.parseDouble(line));
+			} catch (NumberFormatException exception) {
+				System.err.println(line);
+			}
+		}
+		if (0 != process.waitFor() || roundTimes.isEmpty()) {
+			throw new IllegalStateException("The " + path + " fork failed");
+		}
+		return median(roundTimes);
+	}
+	public static final void main(String[] arguments) throws Exception {
+		// Run a single path, if one was passed. The driver below passes one to the virtual machines it forks.
+		if (1 == arguments.length && (PATH_DEDICATED.equals(arguments[0]) || PATH_GENERIC.equals(arguments[0]))) {
+			measure(PATH_GENERIC.equals(arguments[0]));
+			return;
+		}
+		int forkCount = 5;
+		for (final String argument : arguments) {
+			if (argument.startsWith("--forks=")) {
+				forkCount = Integer.parseInt(argument.substring(8));
+			} else {
+				forkCount = 0;
+			}
+		}
+		if (forkCount <= 0) {
+			System.err.println("Usage: DeterminerBenchmark [--forks=n]");
+			System.exit(1);
+			return;
+		}
+		final List<Double> dedicatedTimes = new ArrayList<Double>(forkCount);
+		final List<Double> genericTimes = new ArrayList<Double>(forkCount);
+		System.out.println("fork,dedicated (ns/value),generic (ns/value)");
+		for (int forkIndex = 0; forkCount != forkIndex; forkIndex++) {
+			final double dedicatedTime;
+			final double genericTime;
+			if (0 == (forkIndex & 1)) {
+				dedicatedTime = fork(PATH_DEDICATED);
+				genericTime = fork(PATH_GENERIC);
+			} else /* if (1 == (forkIndex & 1)) */ {
+				genericTime = fork(PATH_GENERIC);
+				dedicatedTime = fork(PATH_DEDICATED);
+			}
+			dedicatedTimes.add(dedicatedTime);
+			genericTimes.add(genericTime);
+			System.out.println(String.format(Locale.US, "%d,%.3f,%.3f", forkIndex, dedicatedTime, genericTime));
+		}
+		System.out.println(String.format(Locale.US, "median,%.3f,%.3f", median(dedicatedTimes), median(genericTimes)));
+		System.out.println(String.format(Locale.US, "range,%.3f-%.3f,%.3f-%.3f",
+				min(dedicatedTimes), max(dedicatedTimes), min(genericTimes), max(genericTimes)));
+	}
+	private static final double max(List<Double> numbers) {
+		double result = Double.NEGATIVE_INFINITY;
+		for (final double number : numbers) {
+			result = Math.max(result, number);
+		}
+		return result;
+	}
+	/**
+	 * Renders the glides through the passed path, and prints the number of nanoseconds one value took on average for every
+	 * measured round.
+	 */
+	private static final void measure(boolean generic) {
+		final ElapsedFactorInterpolator[] interpolators = new ElapsedFactorInterpolator[] {
+			new AccelerateInterpolator(),
+			new DecelerateInterpolator(),
+			new AccelerateDecelerateInterpolator(),
+			new OvershootInterpolator()
+		};
+		if (generic) {
+			for (int index = 0; interpolators.length != index; index++) {
+				interpolators[index] = new CustomInterpolator(interpolators[index]);
+			}
+		}
+		final GlideDefinition[] glideDefinitions = new GlideDefinition[GLIDE_COUNT];
+		for (int index = 0; GLIDE_COUNT != index; index++) {
+			glideDefinitions[index] = new GlideDefinition(0, 255, 1020, 0, interpolators[index % interpolators.length]);
+		}
+		final OfflineFrameRenderer renderer = new OfflineFrameRenderer(glideDefinitions, FRAME_RATE);
+		final int frameCount = renderer.getFrameCount();
+		final double[] values = new double[frameCount * GLIDE_COUNT];
+		final ForkJoinPool pool = new ForkJoinPool(1);
+		for (int roundIndex = 0; ROUND_COUNT << 1 != roundIndex; roundIndex++) {
+			final long start = System.nanoTime();
+			renderer.render(0, frameCount, values, pool);
+			final long end = System.nanoTime();
+			sink += values[values.length >> 1];
+			if (roundIndex >= ROUND_COUNT) {
+				System.out.println((double) (end - start) / values.length);
+			}
+		}
+		pool.shutdown();
+		if (0 == sink) {
+			System.err.println();
+		}
+	}
+	private static final double median(List<Double> numbers) {
+		final double[] sortedNumbers = new double[numbers.size()];
+		for (int index = 0; sortedNumbers.length != index; index++) {
+			sortedNumbers[index] = numbers.get(index);
+		}
+		Arrays.sort(sortedNumbers);
+		final int middleIndex = sortedNumbers.length >> 1;
+		if (0 == (sortedNumbers.length & 1)) {
+			return (sortedNumbers[middleIndex - 1] + sortedNumbers[middleIndex]) / 2;
+		}
+		return sortedNumbers[middleIndex];
+	}
+	private static final double min(List<Double> numbers) {
+		double result = Double.POSITIVE_INFINITY;
+		for (final double number : numbers) {
+			result = Math.min(result, number);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,149 @@
+package org.ilumbo.hakama.documentation;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.ilumbo.hakama.GliderEngine;
+import org.ilumbo.hakama.PresentationTimePredictor;
+import org.ilumbo.hakama.choreographed.ChoreographedGliderEngine;
+import org.ilumbo.hakama.freestyle.FreestyleGliderEngine;
+
+/**
+ * Checks the per-instance sizes documented in the Glider class against the fields the classes actually declare. Run this
+ * after changing the fields of a glider, an engine, the extras, the command slot, the presentation time predictor or a value
+ * determiner. Exits with status 1 if a documented size no longer holds, so the documentation is updated along with the
+ * fields. Also exits with status 1 if an engine exceeds its budget, so a feature cannot grow every engine by updating the
+ * documentation alone.
+ *
+ * The sizes are computed for Android runtimes: 8-byte object headers, 4-byte references and objects aligned to 8 bytes.
+ * The runtime packs the fields of a class hierarchy without gaps (smaller fields fill the gaps left by larger ones), so the
+ * size is the header plus the sizes of all instance fields, rounded up to a multiple of 8.
+ */
+public final class HeapSizeCheck {
+	/**
+	 * The documented sizes: pairs of a class name and its size in bytes.
+	 */
+	private static final Object[] DOCUMENTED_SIZES = new Object[] {
+		"org.ilumbo.hakama.Glider", 16,
+		"org.ilumbo.hakama.AlphaPaintGlider", 16,
+		"org.ilumbo.hakama.choreographed.ChoreographedGliderEngine", 32,
+		"org.ilumbo.hakama.freestyle.FreestyleGliderEngine", 32,
+		"org.ilumbo.hakama.GliderEngine$Extras", 32,
+		"org.ilumbo.hakama.GliderEngine$CommandSlot", 64,
+		"org.ilumbo.hakama.PresentationTimePredictor", 40,
+		"org.ilumbo.hakama.GliderEngine$LinearValueDeterminer", 56,
+		"org.ilumbo.hakama.GliderEngine$InterpolatedValueDeterminer", 64
+	};
+	/**
+	 * The budgets: pairs of a class name and the maximum size in bytes. The budget of an engine is what an engine cost before
+	 * the optional features were added: 32 bytes for the engine and 8 for its separate lock object. Optional features belong
+	 * in the extras, which only the engines that use them allocate.
+	 */
+	private static final Object[] BUDGETS = new Object[] {
+		"org.ilumbo.hakama.choreographed.ChoreographedGliderEngine", 40,
+		"org.ilumbo.hakama.freestyle.FreestyleGliderEngine", 40
+	};
+	/**
+	 * Returns the size of an instance of the passed class on Android runtimes, in bytes.
+	 */
+	private static final int determineSize(Class<?> instanceClass) {
+		int result = 8;
+		for (Class<?> currentClass = instanceClass; Object.class != currentClass;
+				currentClass = currentClass.getSuperclass()) {
+			for (final Field field : currentClass.getDeclaredFields()) {
+				if (false == Modifier.isStatic(field.getModifiers())) {
+					result += determineSize(field);
+				}
+			}
+		}
+		return (result + 7) & ~7;
+	}
+	/**
+	 * Returns the size of the passed field on Android runtimes, in bytes.
+	 */
+	private static final int determineSize(Field field) {
+		final Class<?> type = field.getType();
+		if (long.class == type || double.class == type) {
+			return 8;
+		} else if (int.class == type || float.class == type) {
+			return 4;
+		} else if (short.class == type || char.class == type) {
+			return 2;
+		} else if (byte.class == type || boolean.class == type) {
+			return 1;
+		} else /* if (the field is a reference) */ {
+			return 4;
+		}
+	}
+	/**
+	 * Returns whether the passed object holds an instance of the passed type in one of its fields (including those declared
+	 * by its superclasses), read through reflection.
+	 */
+	private static final boolean holds(Object object, Class<?> type) throws IllegalAccessException {
+		return null != read(object, type);
+	}
+	/**
+	 * Returns the instance of the passed type the passed object holds in one of its fields (including those declared by its
+	 * superclasses), read through reflection. Returns null if there is none.
+	 */
+	private static final Object read(Object object, Class<?> type) throws IllegalAccessException {
+		for (Class<?> currentClass = object.getClass(); Object.class != currentClass;
+				currentClass = currentClass.getSuperclass()) {
+			for (final Field field : currentClass.getDeclaredFields()) {
+				if (false == Modifier.isStatic(field.getModifiers()) && type.isAssignableFrom(field.getType())) {
+					field.setAccessible(true);
+					final Object result = field.get(object);
+					if (null != result) {
+						return result;
+					}
+				}
+			}
+		}
+		return null;
+	}
+	public static final void main(String[] arguments) throws Exception {
+		boolean passed = true;
+		for (int index = 0; DOCUMENTED_SIZES.length != index; index += 2) {
+			final String className = (String) DOCUMENTED_SIZES[index];
+			final int documentedSize = (Integer) DOCUMENTED_SIZES[index + 1];
+			final int size = determineSize(Class.forName(className));
+			if (size != documentedSize) {
+				passed = false;
+			}
+			System.out.println((size == documentedSize ? "ok       " : "MISMATCH ") + className + ": " + size +
+					" bytes (documented: " + documentedSize + ")");
+		}
+		for (int index = 0; BUDGETS.length != index; index += 2) {
+			final String className = (String) BUDGETS[index];
+			final int budget = (Integer) BUDGETS[index + 1];
+			final int size = determineSize(Class.forName(className));
+			if (size > budget) {
+				passed = false;
+			}
+			System.out.println((size <= budget ? "ok       " : "OVER     ") + className + ": " + size + " bytes (budget: " +
+					budget + ")");
+		}
+		// Build engines, and check that idle engines hold no value determiner and no extras, and that the predictor is only
+		// present if predicted presentation timing was requested.
+		final Class<?> extrasClass = Class.forName("org.ilumbo.hakama.GliderEngine$Extras");
+		final Class<?> valueDeterminerClass = Class.forName("org.ilumbo.hakama.GliderEngine$ValueDeterminer");
+		final GliderEngine[] idleEngines = new GliderEngine[] {
+			new ChoreographedGliderEngine(null, 0, false),
+			new FreestyleGliderEngine(null, 0, false)
+		};
+		for (final GliderEngine engine : idleEngines) {
+			if (holds(engine, valueDeterminerClass) || holds(engine, extrasClass)) {
+				passed = false;
+				System.out.println("MISMATCH " + engine.getClass().getName() + " holds more than documented when idle");
+			}
+		}
+		final Object extras = read(new ChoreographedGliderEngine(null, 0, true), extrasClass);
+		if (null == extras || false == holds(extras, PresentationTimePredictor.class)) {
+			passed = false;
+			System.out.println("MISMATCH " + ChoreographedGliderEngine.class.getName() + " holds no predictor");
+		}
+		if (false == passed) {
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
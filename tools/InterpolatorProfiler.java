@@ -0,0 +1,457 @@
+package org.ilumbo.hakama.documentation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
+import org.ilumbo.hakama.interpolation.TabulatedInterpolator;
+
+/**
+ * Profiles elapsed factor interpolators from the command line. For every passed interpolator, reports the time a call to
+ * interpolate (and deinterpolate, if present) takes, the error of a tabulated variant against the exact curve, the error of
+ * the velocity of that tabulated variant against the analytic velocity, the round-trip error of
+ * deinterpolate(interpolate(input)) and the textual representation. If a reference is passed, additionally reports the error
+ * of every interpolator (and its velocity) against that reference. This measures how well an approximation, such as a table
+ * or a composition, follows the exact curve it approximates.
+ *
+ * Usage: InterpolatorProfiler [--format=text|csv|json] [--table-size=n] [--reference=interpolator] interpolator...
+ *
+ * An interpolator is a class name, which is constructed without arguments, or a class name followed by arguments between
+ * parentheses, which are passed to a public constructor. A class name followed by a method name calls a public static
+ * factory method instead. Arguments are numbers or interpolators. For instance:
+ *
+ * InterpolatorProfiler --reference=DecelerateInterpolator "TabulatedInterpolator(DecelerateInterpolator, 64)"
+ * InterpolatorProfiler "ComposedInterpolator.chain(AccelerateInterpolator, DecelerateInterpolator, .5, .5)"
+ *
+ * Class names without a package are looked up in the org.ilumbo.hakama.interpolation package. The CSV and JSON formats are
+ * meant to be stored, so the performance of the interpolators can be tracked across revisions. The times are those of the
+ * virtual machine running this tool.
+ */
+public final class InterpolatorProfiler {
+	/**
+	 * The result of profiling one interpolator. Fields that do not apply are NaN.
+	 */
+	private static final class Profile {
+		public double deinterpolateTime = Double.NaN;
+		public double interpolateTime;
+		public String name;
+		public double referenceMaximumError = Double.NaN;
+		public double referenceMeanError = Double.NaN;
+		public double referenceVelocityMaximumError = Double.NaN;
+		public double referenceVelocityMeanError = Double.NaN;
+		public String representation;
+		public double roundTripMaximumError = Double.NaN;
+		public double roundTripMeanError = Double.NaN;
+		public double tableMaximumError;
+		public double tableMeanError;
+		public double tableVelocityMaximumError;
+		public double tableVelocityMeanError;
+	}
+	/**
+	 * Parses an interpolator from the command line, and creates it.
+	 */
+	private static final class InterpolatorParser {
+		private int position;
+		private final String text;
+		public InterpolatorParser(String text) {
+			this.text = text;
+		}
+		/**
+		 * Converts the passed argument to the passed parameter type. Returns null if it cannot be converted.
+		 */
+		private static final Object convert(Object argument, Class<?> parameterType) {
+			if (argument instanceof Double) {
+				final double number = (Double) argument;
+				if (double.class == parameterType) {
+					return number;
+				} else if (float.class == parameterType) {
+					return (float) number;
+				} else if (int.class == parameterType && (int) number == number) {
+					return (int) number;
+				} else if (long.class == parameterType && (long) number == number) {
+					return (long) number;
+				}
+				return null;
+			}
+			return parameterType.isInstance(argument) ? argument : null;
+		}
+		/**
+		 * Converts the passed arguments to the passed parameter types. Returns null if they cannot be converted.
+		 */
+		private static final Object[] convert(List<Object> arguments, Class<?>[] parameterTypes) {
+			if (arguments.size() != parameterTypes.length) {
+				return null;
+			}
+			final Object[] result = new Object[parameterTypes.length];
+			for (int index = 0; result.length != index; index++) {
+				if (null == (result[index] = convert(arguments.get(index), parameterTypes[index]))) {
+					return null;
+				}
+			}
+			return result;
+		}
+		/**
+		 * Calls the public constructor of the class with the passed name, or the public static method with the passed name,
+		 * which accepts the passed arguments.
+		 */
+		private static final Object create(String name, List<Object> arguments) throws Exception {
+			final Class<?> createdClass = findClass(name);
+			if (null != createdClass) {
+				for (final Constructor<?> constructor : createdClass.getConstructors()) {
+					final Object[] convertedArguments = convert(arguments, constructor.getParameterTypes());
+					if (null != convertedArguments) {
+						return constructor.newInstance(convertedArguments);
+					}
+				}
+				throw new IllegalArgumentException("No public constructor of " + name + " accepts " + arguments);
+			}
+			final int dotIndex = name.lastIndexOf('.');
+			final Class<?> factoryClass = -1 == dotIndex ? null : findClass(name.substring(0, dotIndex));
+			if (null == factoryClass) {
+				throw new ClassNotFoundException(name);
+			}
+			final String methodName = name.substring(dotIndex + 1);
+			for (final Method method : factoryClass.getMethods()) {
+				if (Modifier.isStatic(method.getModifiers()) && methodName.equals(method.getName())) {
+					final Object[] convertedArguments = convert(arguments, method.getParameterTypes());
+					if (null != convertedArguments) {
+						return method.invoke(null, convertedArguments);
+					}
+				}
+			}
+			throw new IllegalArgumentException("No public static method " + name + " accepts " + arguments);
+		}
+		/**
+		 * Returns the class with the passed name, or null if there is none.
+		 */
+		private static final Class<?> findClass(String className) {
+			try {
+				return Class.forName(className);
+			} catch (ClassNotFoundException exception) {
+				if (-1 != className.indexOf('.')) {
+					return null;
+				}
+			}
+			try {
+				return Class.forName(DEFAULT_PACKAGE + className);
+			} catch (ClassNotFoundException exception) {
+				return null;
+			}
+		}
+		/**
+		 * Parses the text passed to the constructor as an interpolator.
+		 */
+		public final ElapsedFactorInterpolator parse() throws Exception {
+			final Object result = parseValue();
+			skipWhitespace();
+			if (text.length() != position) {
+				throw new IllegalArgumentException("Unexpected " + text.substring(position) + " in " + text);
+			}
+			if (false == result instanceof ElapsedFactorInterpolator) {
+				throw new IllegalArgumentException(text + " is not an elapsed factor interpolator");
+			}
+			return (ElapsedFactorInterpolator) result;
+		}
+		/**
+		 * Parses a number or an interpolator, starting at the current position.
+		 */
+		private final Object parseValue() throws Exception {
+			skipWhitespace();
+			final int start = position;
+			if (text.length() == position) {
+				throw new IllegalArgumentException("Unexpected end of " + text);
+			}
+			final char firstCharacter = text.charAt(position);
+			// Parse a number.
+			if ('-' == firstCharacter || '.' == firstCharacter || Character.isDigit(firstCharacter)) {
+				position++;
+				while (text.length() != position && (Character.isLetterOrDigit(text.charAt(position)) ||
+						'.' == text.charAt(position))) {
+					position++;
+				}
+				return Double.parseDouble(text.substring(start, position));
+			}
+			// Parse a name, optionally followed by arguments.
+			while (text.length() != position && (Character.isJavaIdentifierPart(text.charAt(position)) ||
+					'.' == text.charAt(position))) {
+				position++;
+			}
+			if (start == position) {
+				throw new IllegalArgumentException("Unexpected " + text.substring(position) + " in " + text);
+			}
+			final String name = text.substring(start, position);
+			final List<Object> arguments = new ArrayList<Object>();
+			skipWhitespace();
+			if (text.length() != position && '(' == text.charAt(position)) {
+				position++;
+				skipWhitespace();
+				if (text.length() != position && ')' == text.charAt(position)) {
+					position++;
+				} else /* if (there are arguments) */ {
+					do {
+						arguments.add(parseValue());
+						skipWhitespace();
+						if (text.length() == position) {
+							throw new IllegalArgumentException("Unexpected end of " + text);
+						}
+					} while (',' == text.charAt(position++));
+					if (')' != text.charAt(position - 1)) {
+						throw new IllegalArgumentException("Expected ) at " + text.substring(position - 1) + " in " + text);
+					}
+				}
+			}
+			return create(name, arguments);
+		}
+		private final void skipWhitespace() {
+			while (text.length() != position && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+	}
+	private static final String DEFAULT_PACKAGE = "org.ilumbo.hakama.interpolation.";
+	private static final String FORMAT_CSV = "csv";
+	private static final String FORMAT_JSON = "json";
+	private static final String FORMAT_TEXT = "text";
+	/**
+	 * The number of inputs at which the errors are measured.
+	 */
+	private static final int SAMPLE_COUNT = 100000;
+	/**
+	 * The number of calls which are timed, and the number of calls that warm up the virtual machine before those.
+	 */
+	private static final int TIMED_CALL_COUNT = 5000000;
+	/**
+	 * Prevents the just-in-time compiler from eliminating the timed calls.
+	 */
+	private static double sink;
+	/**
+	 * Returns a method handle to the deinterpolate method of the passed interpolator, bound to that interpolator if the
+	 * method is not static. Returns null if the interpolator has no such method.
+	 */
+	private static final MethodHandle findDeinterpolate(ElapsedFactorInterpolator interpolator) throws Exception {
+		final Method method;
+		try {
+			method = interpolator.getClass().getMethod("deinterpolate", double.class);
+		} catch (NoSuchMethodException exception) {
+			return null;
+		}
+		final MethodHandle result = MethodHandles.publicLookup().unreflect(method);
+		if (Modifier.isStatic(method.getModifiers())) {
+			return result;
+		} else /* if (the method is not static) */ {
+			return result.bindTo(interpolator);
+		}
+	}
+	/**
+	 * Formats the passed number, or returns the passed string if the number is NaN.
+	 */
+	private static final String format(double number, String nanString) {
+		if (Double.isNaN(number)) {
+			return nanString;
+		}
+		return String.format(Locale.US, "%.6g", number);
+	}
+	public static final void main(String[] arguments) throws Throwable {
+		String format = FORMAT_TEXT;
+		int tableSize = 256;
+		String referenceText = null;
+		final List<String> interpolatorTexts = new ArrayList<String>();
+		for (final String argument : arguments) {
+			if (argument.startsWith("--format=")) {
+				format = argument.substring(9);
+			} else if (argument.startsWith("--table-size=")) {
+				tableSize = Integer.parseInt(argument.substring(13));
+			} else if (argument.startsWith("--reference=")) {
+				referenceText = argument.substring(12);
+			} else {
+				interpolatorTexts.add(argument);
+			}
+		}
+		if (interpolatorTexts.isEmpty() || tableSize < 2 ||
+				false == (FORMAT_TEXT.equals(format) || FORMAT_CSV.equals(format) || FORMAT_JSON.equals(format))) {
+			System.err.println("Usage: InterpolatorProfiler [--format=text|csv|json] [--table-size=n] " +
+					"[--reference=interpolator] interpolator...");
+			System.exit(1);
+			return;
+		}
+		final ElapsedFactorInterpolator reference = null == referenceText ? null :
+				new InterpolatorParser(referenceText).parse();
+		final List<Profile> profiles = new ArrayList<Profile>(interpolatorTexts.size());
+		for (final String interpolatorText : interpolatorTexts) {
+			final Profile profile = profile(new InterpolatorParser(interpolatorText).parse(), tableSize, reference);
+			profile.name = interpolatorText;
+			profiles.add(profile);
+		}
+		if (FORMAT_CSV.equals(format)) {
+			printCsv(profiles, tableSize);
+		} else if (FORMAT_JSON.equals(format)) {
+			printJson(profiles, tableSize);
+		} else /* if (FORMAT_TEXT.equals(format)) */ {
+			printText(profiles, tableSize);
+		}
+		if (0 == sink) {
+			System.err.println();
+		}
+	}
+	private static final void printCsv(List<Profile> profiles, int tableSize) {
+		System.out.println("interpolator,interpolate_ns,deinterpolate_ns,table_size,table_max_error,table_mean_error," +
+				"table_velocity_max_error,table_velocity_mean_error,round_trip_max_error,round_trip_mean_error," +
+				"reference_max_error,reference_mean_error,reference_velocity_max_error,reference_velocity_mean_error");
+		for (final Profile profile : profiles) {
+			System.out.println(quote(profile.name) + "," +
+					format(profile.interpolateTime, "") + "," +
+					format(profile.deinterpolateTime, "") + "," +
+					tableSize + "," +
+					format(profile.tableMaximumError, "") + "," +
+					format(profile.tableMeanError, "") + "," +
+					format(profile.tableVelocityMaximumError, "") + "," +
+					format(profile.tableVelocityMeanError, "") + "," +
+					format(profile.roundTripMaximumError, "") + "," +
+					format(profile.roundTripMeanError, "") + "," +
+					format(profile.referenceMaximumError, "") + "," +
+					format(profile.referenceMeanError, "") + "," +
+					format(profile.referenceVelocityMaximumError, "") + "," +
+					format(profile.referenceVelocityMeanError, ""));
+		}
+	}
+	private static final void printJson(List<Profile> profiles, int tableSize) {
+		final StringBuilder resultBuilder = new StringBuilder("[");
+		for (final Profile profile : profiles) {
+			if (1 != resultBuilder.length()) {
+				resultBuilder.append(',');
+			}
+			resultBuilder.append("\n\t{\"interpolator\": \"").append(profile.name.replace("\"", "\\\""))
+					.append("\", \"interpolateNs\": ").append(format(profile.interpolateTime, "null"))
+					.append(", \"deinterpolateNs\": ").append(format(profile.deinterpolateTime, "null"))
+					.append(", \"tableSize\": ").append(tableSize)
+					.append(", \"tableMaxError\": ").append(format(profile.tableMaximumError, "null"))
+					.append(", \"tableMeanError\": ").append(format(profile.tableMeanError, "null"))
+					.append(", \"tableVelocityMaxError\": ").append(format(profile.tableVelocityMaximumError, "null"))
+					.append(", \"tableVelocityMeanError\": ").append(format(profile.tableVelocityMeanError, "null"))
+					.append(", \"roundTripMaxError\": ").append(format(profile.roundTripMaximumError, "null"))
+					.append(", \"roundTripMeanError\": ").append(format(profile.roundTripMeanError, "null"))
+					.append(", \"referenceMaxError\": ").append(format(profile.referenceMaximumError, "null"))
+					.append(", \"referenceMeanError\": ").append(format(profile.referenceMeanError, "null"))
+					.append(", \"referenceVelocityMaxError\": ")
+					.append(format(profile.referenceVelocityMaximumError, "null"))
+					.append(", \"referenceVelocityMeanError\": ")
+					.append(format(profile.referenceVelocityMeanError, "null"))
+					.append(", \"plot\": \"").append(profile.representation.replace("\n", "\\n")).append("\"}");
+		}
+		System.out.println(resultBuilder.append("\n]").toString());
+	}
+	private static final void printText(List<Profile> profiles, int tableSize) {
+		for (final Profile profile : profiles) {
+			System.out.println(profile.name);
+			System.out.println("\tinterpolate:   " + format(profile.interpolateTime, "n/a") + " ns per call");
+			System.out.println("\tdeinterpolate: " + format(profile.deinterpolateTime, "n/a") + " ns per call");
+			System.out.println("\ttable of " + tableSize + ": " + format(profile.tableMaximumError, "n/a") +
+					" maximum error, " + format(profile.tableMeanError, "n/a") + " mean error");
+			System.out.println("\ttable velocity: " + format(profile.tableVelocityMaximumError, "n/a") + " maximum error, " +
+					format(profile.tableVelocityMeanError, "n/a") + " mean error");
+			System.out.println("\tround trip:    " + format(profile.roundTripMaximumError, "n/a") + " maximum error, " +
+					format(profile.roundTripMeanError, "n/a") + " mean error");
+			System.out.println("\treference:     " + format(profile.referenceMaximumError, "n/a") + " maximum error, " +
+					format(profile.referenceMeanError, "n/a") + " mean error");
+			System.out.println("\treference velocity: " + format(profile.referenceVelocityMaximumError, "n/a") +
+					" maximum error, " + format(profile.referenceVelocityMeanError, "n/a") + " mean error");
+			System.out.println(profile.representation);
+			System.out.println();
+		}
+	}
+	/**
+	 * Returns the passed text as a CSV field, quoted if it contains a comma or a quote.
+	 */
+	private static final String quote(String text) {
+		if (-1 == text.indexOf(',') && -1 == text.indexOf('"')) {
+			return text;
+		}
+		return "\"" + text.replace("\"", "\"\"") + "\"";
+	}
+	/**
+	 * Profiles the passed interpolator. If the passed reference is not null, the errors against that reference are measured
+	 * as well.
+	 */
+	private static final Profile profile(ElapsedFactorInterpolator interpolator, int tableSize,
+			ElapsedFactorInterpolator reference) throws Throwable {
+		final Profile result = new Profile();
+		// Time the interpolate method. The calls are done twice: the first time warms up the virtual machine.
+		for (int pass = 0; 2 != pass; pass++) {
+			double sum = 0;
+			final long start = System.nanoTime();
+			for (int index = 0; TIMED_CALL_COUNT != index; index++) {
+				sum += interpolator.interpolate((double) index / TIMED_CALL_COUNT);
+			}
+			result.interpolateTime = (double) (System.nanoTime() - start) / TIMED_CALL_COUNT;
+			sink += sum;
+		}
+		// Time the deinterpolate method, if present. Note that calling through the method handle adds a little overhead.
+		final MethodHandle deinterpolate = findDeinterpolate(interpolator);
+		if (null != deinterpolate) {
+			for (int pass = 0; 2 != pass; pass++) {
+				double sum = 0;
+				final long start = System.nanoTime();
+				for (int index = 0; TIMED_CALL_COUNT != index; index++) {
+					sum += (double) deinterpolate.invokeExact((double) index / TIMED_CALL_COUNT);
+				}
+				result.deinterpolateTime = (double) (System.nanoTime() - start) / TIMED_CALL_COUNT;
+				sink += sum;
+			}
+		}
+		// Tabulate the curve.
+		final TabulatedInterpolator table = new TabulatedInterpolator(interpolator, tableSize);
+		// Measure the errors.
+		double tableErrorSum = 0;
+		double tableVelocityErrorSum = 0;
+		double roundTripErrorSum = 0;
+		double referenceErrorSum = 0;
+		double referenceVelocityErrorSum = 0;
+		if (null != reference) {
+			result.referenceMaximumError = 0;
+			result.referenceVelocityMaximumError = 0;
+		}
+		for (int index = 0; SAMPLE_COUNT != index; index++) {
+			final double input = (double) index / (SAMPLE_COUNT - 1);
+			final double exactOutput = interpolator.interpolate(input);
+			final double tableError = Math.abs(table.interpolate(input) - exactOutput);
+			tableErrorSum += tableError;
+			result.tableMaximumError = Math.max(result.tableMaximumError, tableError);
+			final double tableVelocityError = Math.abs(table.velocity(input) - interpolator.velocity(input));
+			tableVelocityErrorSum += tableVelocityError;
+			result.tableVelocityMaximumError = Math.max(result.tableVelocityMaximumError, tableVelocityError);
+			if (null != deinterpolate) {
+				final double roundTripError = Math.abs((double) deinterpolate.invokeExact(exactOutput) - input);
+				roundTripErrorSum += roundTripError;
+				result.roundTripMaximumError = 0 == index ? roundTripError :
+						Math.max(result.roundTripMaximumError, roundTripError);
+			}
+			if (null != reference) {
+				final double referenceError = Math.abs(exactOutput - reference.interpolate(input));
+				referenceErrorSum += referenceError;
+				result.referenceMaximumError = Math.max(result.referenceMaximumError, referenceError);
+				final double referenceVelocityError = Math.abs(interpolator.velocity(input) - reference.velocity(input));
+				referenceVelocityErrorSum += referenceVelocityError;
+				result.referenceVelocityMaximumError = Math.max(result.referenceVelocityMaximumError,
+						referenceVelocityError);
+			}
+		}
+		result.tableMeanError = tableErrorSum / SAMPLE_COUNT;
+		result.tableVelocityMeanError = tableVelocityErrorSum / SAMPLE_COUNT;
+		if (null != deinterpolate) {
+			result.roundTripMeanError = roundTripErrorSum / SAMPLE_COUNT;
+		}
+		if (null != reference) {
+			result.referenceMeanError = referenceErrorSum / SAMPLE_COUNT;
+			result.referenceVelocityMeanError = referenceVelocityErrorSum / SAMPLE_COUNT;
+		}
+		// Draw the curve, using the same dimensions as the documentation of the built-in interpolators.
+		result.representation = TextualRepresentationGenerator.generateTextualRepresentation(interpolator, 64, 16, 2);
+		return result;
+	}
+}
\ No newline at end of file
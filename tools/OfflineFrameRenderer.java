@@ -0,0 +1,182 @@
+package org.ilumbo.hakama;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.ilumbo.hakama.GliderEngine.ValueDeterminer;
+import org.ilumbo.hakama.interpolation.ElapsedFactorInterpolator;
+
+/**
+ * Renders the values of a set of glides for every frame at a fixed frame rate, without waiting for those frames to happen in
+ * real time. Useful for exporting animations, for instance to videos or to automated visual tests.
+ *
+ * The values are determined by the same value determiners the engines use, so they are bit-identical to the values an engine
+ * would produce for a frame at the same offset from the start of the glide (with presentation time prediction disabled).
+ * Frames are rendered in parallel by a fork-join pool, which is available from Android 5.0 (lollipop) and on any desktop
+ * virtual machine.
+ *
+ * As the library itself runs on Android versions without a fork-join pool, this renderer is a tool rather than part of the
+ * library. It is in the package of the library, so it can use the value determiners.
+ */
+public final class OfflineFrameRenderer {
+	/**
+	 * Defines a glide that is rendered.
+	 */
+	public static final class GlideDefinition {
+		/**
+		 * Determines the values of the glide.
+		 */
+		/* package */ final ValueDeterminer valueDeterminer;
+		/**
+		 * Defines a glide from the passed start value to the passed end value. The passed speed is the amount that would be
+		 * added to the start value or substracted from it every second to reach the end value, if the glide were linear. The
+		 * passed start offset is the time at which the glide starts relative to the first frame, in nanoseconds. Pass null as
+		 * the interpolator for a linear glide.
+		 */
+		public GlideDefinition(double startValue, double endValue, double averageSpeed, long startOffset,
+				ElapsedFactorInterpolator interpolator) {
+			final long duration = GliderEngine.determineDuration(startValue, endValue, averageSpeed);
+			if (null == interpolator) {
+				valueDeterminer = new GliderEngine.LinearValueDeterminer(startValue, endValue, startOffset, duration);
+			} else /* if (null != interpolator) */ {
+				valueDeterminer = GliderEngine.createInterpolatedValueDeterminer(startValue, endValue, startOffset, duration,
+						interpolator);
+			}
+		}
+	}
+	/**
+	 * Renders a range of frames, splitting that range in halves until it is small enough to render directly.
+	 */
+	private final class RenderAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The index of the first frame that is rendered.
+		 */
+		private final int firstFrameIndex;
+		/**
+		 * The number of frames that are rendered.
+		 */
+		private final int frameCount;
+		/**
+		 * The index of the first frame that is rendered into the values, which is not necessarily the first frame of this
+		 * action.
+		 */
+		private final int valuesFirstFrameIndex;
+		/**
+		 * The array the values are rendered into.
+		 */
+		private final double[] values;
+		public RenderAction(double[] values, int valuesFirstFrameIndex, int firstFrameIndex, int frameCount) {
+			this.values = values;
+			this.valuesFirstFrameIndex = valuesFirstFrameIndex;
+			this.firstFrameIndex = firstFrameIndex;
+			this.frameCount = frameCount;
+		}
+		@Override
+		protected final void compute() {
+			// Split the range in halves if it is too large.
+			if (frameCount > LEAF_FRAME_COUNT) {
+				final int firstHalfFrameCount = frameCount >> 1;
+				invokeAll(new RenderAction(values, valuesFirstFrameIndex, firstFrameIndex, firstHalfFrameCount),
+						new RenderAction(values, valuesFirstFrameIndex, firstFrameIndex + firstHalfFrameCount,
+								frameCount - firstHalfFrameCount));
+				return;
+			}
+			// Render the frames directly.
+			final int glideCount = valueDeterminers.length;
+			int valueIndex = (firstFrameIndex - valuesFirstFrameIndex) * glideCount;
+			final int endFrameIndex = firstFrameIndex + frameCount;
+			for (int frameIndex = firstFrameIndex; endFrameIndex != frameIndex; frameIndex++) {
+				final long frameTime = getFrameTime(frameIndex);
+				for (final ValueDeterminer valueDeterminer : valueDeterminers) {
+					values[valueIndex++] = valueDeterminer.determineValue(frameTime);
+				}
+			}
+		}
+	}
+	/**
+	 * The number of frames that is rendered into memory at once when rendering to a stream.
+	 */
+	private static final int CHUNK_FRAME_COUNT = 1024;
+	/**
+	 * The maximum number of frames a render action renders directly, without splitting.
+	 */
+	private static final int LEAF_FRAME_COUNT = 64;
+	/**
+	 * The number of frames per second.
+	 */
+	private final int frameRate;
+	/**
+	 * The value determiners of the glides, in the order in which they were defined.
+	 */
+	private final ValueDeterminer[] valueDeterminers;
+	public OfflineFrameRenderer(GlideDefinition[] glideDefinitions, int frameRate) {
+		if (frameRate <= 0) {
+			throw new IllegalArgumentException("The frame rate must be positive");
+		}
+		this.frameRate = frameRate;
+		valueDeterminers = new ValueDeterminer[glideDefinitions.length];
+		for (int index = 0; glideDefinitions.length != index; index++) {
+			valueDeterminers[index] = glideDefinitions[index].valueDeterminer;
+		}
+	}
+	/**
+	 * Returns the number of frames up to and including the first frame at which all of the glides are completed.
+	 */
+	public final int getFrameCount() {
+		long endTime = 0;
+		for (final ValueDeterminer valueDeterminer : valueDeterminers) {
+			endTime = Math.max(endTime, valueDeterminer.endTime);
+		}
+		// The frame at which the last glide is completed is the first frame whose time is not less than the end time.
+		return (int) ((endTime * frameRate + 999999999) / 1000000000) + 1;
+	}
+	/**
+	 * Returns the time of the frame with the passed index, relative to the first frame, in nanoseconds.
+	 */
+	public final long getFrameTime(int frameIndex) {
+		return (frameIndex * 1000000000L) / frameRate;
+	}
+	/**
+	 * Returns the number of glides, which is the number of values per frame.
+	 */
+	public final int getGlideCount() {
+		return valueDeterminers.length;
+	}
+	/**
+	 * Renders the passed number of frames starting at the passed frame index into the passed array, which must have room for
+	 * the frame count times the glide count. The values are ordered by frame, then by glide: the value of glide g in frame
+	 * firstFrameIndex + f ends up at index f * glideCount + g.
+	 */
+	public final void render(int firstFrameIndex, int frameCount, double[] values, ForkJoinPool pool) {
+		if (values.length < (long) frameCount * valueDeterminers.length) {
+			throw new IllegalArgumentException("The array is too small to hold the values of " + frameCount + " frames");
+		}
+		pool.invoke(new RenderAction(values, firstFrameIndex, firstFrameIndex, frameCount));
+	}
+	/**
+	 * Renders all of the frames (see {@link #getFrameCount()}) to the passed stream, in the same order as
+	 * {@link #render(int, int, double[], ForkJoinPool)} does. Every value is written as 8 bytes, in the format of
+	 * {@link DataOutputStream#writeDouble(double)}. Frames are rendered in chunks, so the memory use does not depend on the
+	 * number of frames. The passed stream is flushed, but not closed.
+	 */
+	public final void render(OutputStream outputStream, ForkJoinPool pool) throws IOException {
+		final int frameCount = getFrameCount();
+		final int glideCount = valueDeterminers.length;
+		final double[] values = new double[Math.min(CHUNK_FRAME_COUNT, frameCount) * glideCount];
+		final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+		for (int firstFrameIndex = 0; firstFrameIndex < frameCount; firstFrameIndex += CHUNK_FRAME_COUNT) {
+			final int chunkFrameCount = Math.min(CHUNK_FRAME_COUNT, frameCount - firstFrameIndex);
+			render(firstFrameIndex, chunkFrameCount, values, pool);
+			final int valueCount = chunkFrameCount * glideCount;
+			for (int valueIndex = 0; valueCount != valueIndex; valueIndex++) {
+				dataOutputStream.writeDouble(values[valueIndex]);
+			}
+		}
+		dataOutputStream.flush();
+	}
+}
\ No newline at end of file